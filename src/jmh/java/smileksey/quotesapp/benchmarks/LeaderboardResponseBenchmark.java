@@ -0,0 +1,96 @@
+package smileksey.quotesapp.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.events.QuoteVotedEvent;
+import smileksey.quotesapp.services.LeaderboardResponses;
+import smileksey.quotesapp.services.QuotesLeaderboard;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//тело ответа /quotes/top10: сериализация списка на каждый запрос против готовых байт для версии списка
+//(json и gzip), а также запросы под постоянным потоком голосов: голоса за цитаты вне списка не меняют версию списка,
+//голос за цитату из списка без изменения рейтинга пересобирает json, но сохраняет сжатие и ETag
+//выделение памяти на запрос смотреть с профилировщиком: -Djmh.args="LeaderboardResponse -prof gc"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class LeaderboardResponseBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    private ConfigurableApplicationContext context;
+    private QuotesLeaderboard leaderboard;
+    private LeaderboardResponses responses;
+    private ObjectMapper objectMapper;
+    //цитаты вне списка 10 лучших и цитаты самого списка
+    private int[] outsideIds;
+    private int[] topIds;
+    private int vote = 1;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = QuotesBenchmarkContext.start(ROWS);
+        leaderboard = context.getBean(QuotesLeaderboard.class);
+        responses = context.getBean(LeaderboardResponses.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        outsideIds = leaderboard.worst(ROWS / 2).stream().mapToInt(QuoteDto::getId).toArray();
+        topIds = leaderboard.top(10).stream().mapToInt(QuoteDto::getId).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    //прежняя обработка запроса: список QuoteDto из рейтинга и сериализация Jackson
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(leaderboard.top(10));
+    }
+
+    @Benchmark
+    public byte[] cachedJson() {
+        return responses.top10().getJson();
+    }
+
+    @Benchmark
+    public byte[] cachedGzip() {
+        return responses.top10().getGzip();
+    }
+
+    //голос за цитату из нижней половины рейтинга (попеременно +1 и -1), затем запрос сжатого ответа:
+    //общая версия рейтинга меняется, версия списка - нет, ответ не пересобирается
+    @Benchmark
+    public byte[] steadyVotes() {
+        vote = -vote;
+        leaderboard.onQuoteVoted(new QuoteVotedEvent(outsideIds[ThreadLocalRandom.current().nextInt(outsideIds.length)], vote));
+        return responses.top10().getGzip();
+    }
+
+    //событие голосования за цитату из списка без изменения рейтинга (delta = 0): запись цитаты заменяется,
+    //json строится заново, но совпадает с прежним - сжатие и версия для ETag переиспользуются
+    @Benchmark
+    public byte[] voteInList() {
+        leaderboard.onQuoteVoted(new QuoteVotedEvent(topIds[ThreadLocalRandom.current().nextInt(topIds.length)], 0));
+        return responses.top10().getGzip();
+    }
+}
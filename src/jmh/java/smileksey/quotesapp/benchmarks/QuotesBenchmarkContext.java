@@ -0,0 +1,89 @@
+package smileksey.quotesapp.benchmarks;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import smileksey.quotesapp.QuotesSpringbootAppApplication;
+import smileksey.quotesapp.services.QuoteSearchIndex;
+import smileksey.quotesapp.services.QuotesLeaderboard;
+import smileksey.quotesapp.services.RandomQuoteIndex;
+import smileksey.quotesapp.services.WeightedQuoteSampler;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+//общий для бенчмарков запуск приложения без веб-сервера со встроенной H2, заполненной тестовыми данными
+final class QuotesBenchmarkContext {
+
+    static final int USERS = 1000;
+    static final String USER_PASSWORD = "12345";
+
+    private static final int SEED_BATCH = 10_000;
+    //словарь дополнительных слов цитат для поиска
+    static final int VOCABULARY = 10_000;
+    private static final int WORDS_PER_QUOTE = 5;
+
+    private QuotesBenchmarkContext() {
+    }
+
+    //запустить приложение, заполнить БД rows цитатами (id 1..rows) и перезагрузить индексы в памяти
+    static ConfigurableApplicationContext start(int rows, String... properties) {
+        List<String> allProperties = new ArrayList<>(List.of("logging.level.root=WARN"));
+        allProperties.addAll(List.of(properties));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(QuotesSpringbootAppApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(allProperties.toArray(new String[0]))
+                .run();
+
+        seed(context.getBean(JdbcTemplate.class), rows);
+
+        context.getBean(QuotesLeaderboard.class).reload();
+        context.getBean(RandomQuoteIndex.class).reload();
+        context.getBean(WeightedQuoteSampler.class).reload();
+        context.getBean(QuoteSearchIndex.class).reload();
+
+        return context;
+    }
+
+    //email тестового пользователя с номером i (0..USERS-1)
+    static String userEmail(int i) {
+        return "user" + i + "@mail.com";
+    }
+
+    static void seed(JdbcTemplate jdbcTemplate, int rows) {
+        Date today = new Date(System.currentTimeMillis());
+
+        List<Object[]> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            users.add(new Object[]{"User " + i, userEmail(i), USER_PASSWORD, today});
+        }
+        jdbcTemplate.batchUpdate("insert into service_user (name, email, password, date_of_creation) values (?, ?, ?, ?)", users);
+
+        Integer firstUserId = jdbcTemplate.queryForObject("select min(id) from service_user", Integer.class);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        //id задаются явно и плотно (1..rows), затем последовательность сдвигается за последний id
+        for (int from = 0; from < rows; from += SEED_BATCH) {
+            List<Object[]> quotes = new ArrayList<>(SEED_BATCH);
+            for (int i = from; i < Math.min(rows, from + SEED_BATCH); i++) {
+                quotes.add(new Object[]{i + 1, content(i, random), today, firstUserId + random.nextInt(USERS), random.nextInt(1000)});
+            }
+            jdbcTemplate.batchUpdate("insert into quote (id, content, date_of_creation, user_id, votes) values (?, ?, ?, ?, ?)", quotes);
+        }
+
+        jdbcTemplate.execute("alter sequence quote_id_seq restart with " + (rows + 50));
+    }
+
+    //текст цитаты: номер и несколько слов wordK, слова с меньшим K встречаются чаще
+    private static String content(int i, ThreadLocalRandom random) {
+        StringBuilder content = new StringBuilder("Quote number ").append(i);
+        for (int w = 0; w < WORDS_PER_QUOTE; w++) {
+            content.append(" word").append(random.nextInt(random.nextInt(VOCABULARY) + 1));
+        }
+        return content.toString();
+    }
+}
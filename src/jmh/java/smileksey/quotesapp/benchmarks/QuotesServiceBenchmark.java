@@ -0,0 +1,95 @@
+package smileksey.quotesapp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.models.User;
+import smileksey.quotesapp.services.QuotesService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//основные операции QuotesService на встроенной H2 с rows цитатами, один поток
+//многопоточный вариант - QuotesServiceParallelBenchmark
+//запуск: mvn -Pbenchmark test-compile exec:exec -Djmh.args="QuotesService -p rows=100000 -rf json -rff target/jmh-result.json"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Threads(1)
+public class QuotesServiceBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private QuotesService quotesService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = QuotesBenchmarkContext.start(rows);
+        quotesService = context.getBean(QuotesService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public QuoteDto findById() {
+        return quotesService.findById(randomId());
+    }
+
+    @Benchmark
+    public QuoteDto findRandomQuote() {
+        return quotesService.findRandomQuote();
+    }
+
+    @Benchmark
+    public List<QuoteDto> findTopTen() {
+        return quotesService.findTopTen();
+    }
+
+    @Benchmark
+    public void upvote() {
+        quotesService.upvote(randomId());
+    }
+
+    //новая цитата от случайного пользователя - с проверкой email и пароля, как при запросе к API
+    @Benchmark
+    public Quote add() {
+        User author = new User();
+        author.setEmail(QuotesBenchmarkContext.userEmail(ThreadLocalRandom.current().nextInt(QuotesBenchmarkContext.USERS)));
+        author.setPassword(QuotesBenchmarkContext.USER_PASSWORD);
+
+        Quote quote = new Quote();
+        quote.setContent("Benchmark quote");
+        quote.setUser(author);
+
+        quotesService.add(quote);
+        return quote;
+    }
+
+    //id засеянных цитат - 1..rows
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(rows) + 1;
+    }
+}
@@ -0,0 +1,9 @@
+package smileksey.quotesapp.benchmarks;
+
+import org.openjdk.jmh.annotations.Threads;
+
+//те же операции, что в QuotesServiceBenchmark, но из 8 потоков одновременно:
+//показывает конкуренцию за соединения пула, блокировки строк при голосовании и блокировки индексов в памяти
+@Threads(8)
+public class QuotesServiceParallelBenchmark extends QuotesServiceBenchmark {
+}
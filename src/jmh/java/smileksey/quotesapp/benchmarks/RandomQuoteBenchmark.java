@@ -0,0 +1,75 @@
+package smileksey.quotesapp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.repositories.QuotesRepository;
+import smileksey.quotesapp.services.QuotesService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//сравнение выбора случайной цитаты: count() + OFFSET-пагинация против индекса id в памяти
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class RandomQuoteBenchmark {
+
+    @Param({"1000000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private QuotesService quotesService;
+    private QuotesRepository quotesRepository;
+    private TransactionTemplate readOnlyTransaction;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = QuotesBenchmarkContext.start(rows);
+
+        quotesService = context.getBean(QuotesService.class);
+        quotesRepository = context.getBean(QuotesRepository.class);
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    //прежний способ: количество записей + страница из одной записи со случайным смещением
+    @Benchmark
+    public Quote countAndOffset() {
+        return readOnlyTransaction.execute(status -> {
+            long quotesQty = quotesRepository.count();
+            int index = (int) (ThreadLocalRandom.current().nextDouble() * quotesQty);
+            return quotesRepository.findAll(PageRequest.of(index, 1)).getContent().get(0);
+        });
+    }
+
+    //выбор id из индекса в памяти + запрос по первичному ключу
+    @Benchmark
+    public QuoteDto randomIndex() {
+        return quotesService.findRandomQuote();
+    }
+}
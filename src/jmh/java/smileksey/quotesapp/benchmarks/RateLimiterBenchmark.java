@@ -0,0 +1,83 @@
+package smileksey.quotesapp.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import smileksey.quotesapp.ratelimit.RateLimitInterceptor;
+import smileksey.quotesapp.ratelimit.RateLimiter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//стоимость проверки лимита на один запрос: разрешенный запрос одного клиента, тот же запрос из нескольких потоков
+//(конкуренция за CAS одного счетчика), запросы от множества клиентов, отклоненный запрос
+//и полная проверка в RateLimitInterceptor, включая определение клиента и бюджета по запросу
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private static final int CLIENTS = 100_000;
+
+    //интервал 1 нс: запас запросов не заканчивается, измеряется только путь разрешенного запроса
+    private final RateLimiter unlimited = new RateLimiter(1e9, 1_000_000);
+    //один запрос в 1000 секунд: после первого запроса все отклоняются
+    private final RateLimiter exhausted = new RateLimiter(1e-3, 1);
+    private final String[] clients = new String[CLIENTS];
+
+    private RateLimitInterceptor interceptor;
+    private final MockHttpServletRequest request = new MockHttpServletRequest("PATCH", "/quotes/1/upvote");
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i] = "10." + (i >> 16) + "." + (i >> 8 & 0xff) + "." + (i & 0xff);
+        }
+        exhausted.tryAcquire(clients[0], System.nanoTime());
+
+        interceptor = new RateLimitInterceptor(unlimited, unlimited, false, TimeUnit.MINUTES.toMillis(1), new SimpleMeterRegistry());
+        request.setRemoteAddr(clients[0]);
+    }
+
+    @Benchmark
+    public long allowed() {
+        return unlimited.tryAcquire(clients[0], System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long allowedContended() {
+        return unlimited.tryAcquire(clients[0], System.nanoTime());
+    }
+
+    @Benchmark
+    public long allowedManyClients() {
+        return unlimited.tryAcquire(clients[ThreadLocalRandom.current().nextInt(CLIENTS)], System.nanoTime());
+    }
+
+    @Benchmark
+    public long rejected() {
+        return exhausted.tryAcquire(clients[0], System.nanoTime());
+    }
+
+    @Benchmark
+    public boolean interceptor() throws IOException {
+        return interceptor.preHandle(request, response, null);
+    }
+}
@@ -0,0 +1,64 @@
+package smileksey.quotesapp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.services.QuoteSearchIndex;
+import smileksey.quotesapp.services.QuotesService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//поиск цитат по словам через обратный индекс в памяти
+//запросы: редкое слово, частое слово (~0.5% цитат), слово из всех цитат AND частое, слово из всех цитат AND уникальное
+//объем памяти индекса печатается при подготовке: mvn -Pbenchmark test-compile exec:exec -Djmh.args="Search -p rows=1000000"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class SearchBenchmark {
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"word9000", "word1", "quote word1", "number 123456"})
+    private String query;
+
+    private ConfigurableApplicationContext context;
+    private QuotesService quotesService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = QuotesBenchmarkContext.start(rows);
+        quotesService = context.getBean(QuotesService.class);
+
+        QuoteSearchIndex index = context.getBean(QuoteSearchIndex.class);
+        System.out.printf("%nSearch index: %d quotes, %d terms, ~%d MB%n",
+                index.size(), index.terms(), index.estimateMemory() / (1024 * 1024));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    //первые 20 найденных цитат с наибольшим рейтингом, как GET /quotes/search?q=...
+    @Benchmark
+    public List<QuoteDto> search() {
+        return quotesService.search(query, 20);
+    }
+}
@@ -0,0 +1,76 @@
+package smileksey.quotesapp.benchmarks;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import smileksey.quotesapp.services.QuotesService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//накладные расходы метрик на голосование: upvote с таймером @Timed и счетчиками против upvote без метрик
+//голоса накапливаются в памяти (write-behind), чтобы запись в БД не скрывала стоимость метрик
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class VoteMetricsBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    @Param({"true", "false"})
+    private boolean metrics;
+
+    private ConfigurableApplicationContext context;
+    private QuotesService quotesService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = QuotesBenchmarkContext.start(ROWS,
+                "quotes.votes.write-behind.enabled=true",
+                "quotes.metrics.service-timers.enabled=" + metrics,
+                "management.metrics.enable.all=" + metrics);
+        quotesService = context.getBean(QuotesService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void upvote() {
+        quotesService.upvote(ThreadLocalRandom.current().nextInt(ROWS) + 1);
+    }
+
+    //стоимость самой записи: таймер и счетчик в реестре Prometheus, без приложения
+    @State(Scope.Benchmark)
+    public static class Meters {
+        private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        private final Timer timer = Timer.builder("quotes.service").tag("method", "upvote").register(registry);
+        private final Counter counter = Counter.builder("quotes.votes").tag("direction", "up").register(registry);
+    }
+
+    @Benchmark
+    public void recordTimerAndCounter(Meters meters) {
+        meters.timer.record(150, TimeUnit.NANOSECONDS);
+        meters.counter.increment();
+    }
+}
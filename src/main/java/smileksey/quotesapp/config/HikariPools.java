@@ -0,0 +1,23 @@
+package smileksey.quotesapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+
+//настройка пулов соединений, которые создаются внутри ReplicaRoutingDataSource и ShardRoutingDataSource
+final class HikariPools {
+
+    private HikariPools() {
+    }
+
+    //настройки spring.datasource.hikari.* применяются ко всем пулам; метрики hikaricp.* - с тегом pool
+    //(автоконфигурация метрик пула не видит пулы внутри маршрутизирующего DataSource)
+    static void configure(HikariDataSource pool, String poolName, Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(poolName);
+        meterRegistry.ifAvailable(pool::setMetricRegistry);
+    }
+}
@@ -0,0 +1,71 @@
+package smileksey.quotesapp.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import smileksey.quotesapp.services.LeaderboardStream;
+import smileksey.quotesapp.services.QuoteDtoCache;
+import smileksey.quotesapp.services.QuoteSearchIndex;
+import smileksey.quotesapp.services.QuoteVoters;
+import smileksey.quotesapp.services.QuotesLeaderboard;
+import smileksey.quotesapp.services.RandomQuoteIndex;
+import smileksey.quotesapp.services.TrendingQuotes;
+import smileksey.quotesapp.services.UsersService;
+import smileksey.quotesapp.services.VoteAggregator;
+
+//метрики приложения: таймеры методов с @Timed и показатели компонентов, хранящих данные в памяти
+//метрики HTTP-запросов (http.server.requests) и пула соединений (hikaricp.*) Spring Boot регистрирует сам
+@Configuration
+public class MetricsConfig {
+
+    //таймеры для классов и методов, отмеченных @Timed
+    @Bean
+    @ConditionalOnProperty(name = "quotes.metrics.service-timers.enabled", matchIfMissing = true)
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    //значения читаются только в момент сбора метрик, поэтому на запросы к API не влияют
+    @Bean
+    public MeterBinder quotesInMemoryMetrics(QuoteDtoCache quoteDtoCache, UsersService usersService,
+                                             VoteAggregator voteAggregator, QuotesLeaderboard leaderboard,
+                                             RandomQuoteIndex randomQuoteIndex, LeaderboardStream leaderboardStream,
+                                             TrendingQuotes trendingQuotes, QuoteSearchIndex quoteSearchIndex,
+                                             QuoteVoters quoteVoters) {
+        return registry -> {
+            Gauge.builder("quotes.cache.size", quoteDtoCache, QuoteDtoCache::size)
+                    .tag("cache", "quotes").register(registry);
+            FunctionCounter.builder("quotes.cache.requests", quoteDtoCache, cache -> cache.getStats().hitCount())
+                    .tags("cache", "quotes", "result", "hit").register(registry);
+            FunctionCounter.builder("quotes.cache.requests", quoteDtoCache, cache -> cache.getStats().missCount())
+                    .tags("cache", "quotes", "result", "miss").register(registry);
+
+            Gauge.builder("quotes.cache.size", usersService, UsersService::getCacheSize)
+                    .tag("cache", "users").register(registry);
+            FunctionCounter.builder("quotes.cache.requests", usersService, service -> service.getCacheStats().hitCount())
+                    .tags("cache", "users", "result", "hit").register(registry);
+            FunctionCounter.builder("quotes.cache.requests", usersService, service -> service.getCacheStats().missCount())
+                    .tags("cache", "users", "result", "miss").register(registry);
+
+            Gauge.builder("quotes.votes.pending", voteAggregator, VoteAggregator::pendingSize)
+                    .description("Quotes with votes not yet written to the database").register(registry);
+            Gauge.builder("quotes.leaderboard.size", leaderboard, QuotesLeaderboard::size).register(registry);
+            Gauge.builder("quotes.count", randomQuoteIndex, RandomQuoteIndex::size).register(registry);
+            Gauge.builder("quotes.trending.tracked", trendingQuotes, TrendingQuotes::size)
+                    .description("Quotes with vote counters for the trending list").register(registry);
+            Gauge.builder("quotes.search.index.terms", quoteSearchIndex, QuoteSearchIndex::terms).register(registry);
+            Gauge.builder("quotes.votes.voters.memory", quoteVoters, QuoteVoters::weightedSize).baseUnit("bytes")
+                    .description("Estimated memory of per-quote voter sets loaded from quote_vote").register(registry);
+
+            for (LeaderboardStream.Board board : LeaderboardStream.Board.values()) {
+                Gauge.builder("quotes.leaderboard.stream.subscribers", leaderboardStream, stream -> stream.subscribers(board))
+                        .tag("list", board.name().toLowerCase()).register(registry);
+            }
+        };
+    }
+}
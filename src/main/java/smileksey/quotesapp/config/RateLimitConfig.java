@@ -0,0 +1,42 @@
+package smileksey.quotesapp.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import smileksey.quotesapp.ratelimit.RateLimitInterceptor;
+import smileksey.quotesapp.ratelimit.RateLimiter;
+
+import java.time.Duration;
+
+//ограничение частоты голосов и изменений цитат по клиентам, отключается настройкой quotes.ratelimit.enabled=false
+@Configuration
+@ConditionalOnProperty(name = "quotes.ratelimit.enabled", matchIfMissing = true)
+public class RateLimitConfig implements WebMvcConfigurer {
+
+    private final RateLimitInterceptor interceptor;
+
+    public RateLimitConfig(RateLimitInterceptor interceptor) {
+        this.interceptor = interceptor;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public static RateLimitInterceptor rateLimitInterceptor(@Value("${quotes.ratelimit.votes.per-second:10}") double votesPerSecond,
+                                                            @Value("${quotes.ratelimit.votes.burst:50}") int votesBurst,
+                                                            @Value("${quotes.ratelimit.writes.per-second:1}") double writesPerSecond,
+                                                            @Value("${quotes.ratelimit.writes.burst:20}") int writesBurst,
+                                                            @Value("${quotes.ratelimit.trust-forwarded-for:false}") boolean trustForwardedFor,
+                                                            @Value("${quotes.ratelimit.cleanup-interval:1m}") Duration cleanupInterval,
+                                                            MeterRegistry registry) {
+        return new RateLimitInterceptor(new RateLimiter(votesPerSecond, votesBurst), new RateLimiter(writesPerSecond, writesBurst),
+                trustForwardedFor, cleanupInterval.toMillis(), registry);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(interceptor).addPathPatterns("/quotes/**");
+    }
+}
@@ -0,0 +1,58 @@
+package smileksey.quotesapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import smileksey.quotesapp.datasource.ReplicaRoutingDataSource;
+import smileksey.quotesapp.datasource.ReplicaSelection;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+//основная БД и реплики для чтения, включается заданием quotes.datasource.replica-urls
+//при разбиении цитат на шарды (quotes.sharding.shard-urls) реплики не используются
+//вместо DataSource из автоконфигурации Spring Boot создается один ReplicaRoutingDataSource, внутри которого пулы
+//основной БД и реплик: SqlProfilerConfig оборачивает только его, и каждый запрос учитывается в профиле один раз
+@Configuration
+@ConditionalOnExpression("!'${quotes.datasource.replica-urls:}'.isEmpty() and '${quotes.sharding.shard-urls:}'.isEmpty()")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties, Environment environment,
+                                 ObjectProvider<MeterRegistry> meterRegistry,
+                                 @Value("${quotes.datasource.replica-urls}") List<String> replicaUrls,
+                                 @Value("${quotes.datasource.replica-username:}") String replicaUsername,
+                                 @Value("${quotes.datasource.replica-password:}") String replicaPassword,
+                                 @Value("${quotes.datasource.replica-selection:round-robin}") ReplicaSelection selection,
+                                 @Value("${quotes.datasource.replica-connection-timeout:1s}") Duration connectionTimeout,
+                                 @Value("${quotes.datasource.retry-down-replica-after:10s}") Duration retryDownReplicaAfter,
+                                 @Value("${quotes.datasource.read-your-writes-window:5s}") Duration readYourWritesWindow) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        HikariPools.configure(primary, "primary", environment, meterRegistry);
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            HikariDataSource replica = new HikariDataSource();
+            HikariPools.configure(replica, "replica-" + replicas.size(), environment, meterRegistry);
+            replica.setJdbcUrl(url.trim());
+            //по умолчанию - те же учетные данные, что и у основной БД
+            replica.setUsername(replicaUsername.isEmpty() ? properties.determineUsername() : replicaUsername);
+            replica.setPassword(replicaUsername.isEmpty() ? properties.determinePassword() : replicaPassword);
+            replica.setReadOnly(true);
+            //недоступная реплика не должна ни останавливать запуск приложения, ни надолго задерживать чтение
+            replica.setConnectionTimeout(connectionTimeout.toMillis());
+            replica.setInitializationFailTimeout(-1);
+            replicas.add(replica);
+        }
+
+        return new ReplicaRoutingDataSource(primary, replicas, selection, readYourWritesWindow, retryDownReplicaAfter);
+    }
+}
@@ -0,0 +1,49 @@
+package smileksey.quotesapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import smileksey.quotesapp.datasource.ShardRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+//разбиение цитат на шарды, включается заданием quotes.sharding.shard-urls
+//шард 0 - основная БД spring.datasource, шарды 1..N-1 - перечисленные БД; схема в каждой БД создается по db.sql
+//как и с репликами, все пулы находятся внутри одного бина DataSource, поэтому SqlProfilerConfig оборачивает только его
+@Configuration
+@ConditionalOnProperty("quotes.sharding.shard-urls")
+public class ShardingDataSourceConfig {
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties, Environment environment,
+                                 ObjectProvider<MeterRegistry> meterRegistry,
+                                 @Value("${quotes.sharding.shard-urls}") List<String> shardUrls,
+                                 @Value("${quotes.sharding.shard-username:}") String shardUsername,
+                                 @Value("${quotes.sharding.shard-password:}") String shardPassword) {
+        List<HikariDataSource> shards = new ArrayList<>();
+
+        HikariDataSource mainShard = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        HikariPools.configure(mainShard, "shard-0", environment, meterRegistry);
+        shards.add(mainShard);
+
+        for (String url : shardUrls) {
+            HikariDataSource shard = new HikariDataSource();
+            HikariPools.configure(shard, "shard-" + shards.size(), environment, meterRegistry);
+            shard.setJdbcUrl(url.trim());
+            //по умолчанию - те же учетные данные, что и у основной БД
+            shard.setUsername(shardUsername.isEmpty() ? properties.determineUsername() : shardUsername);
+            shard.setPassword(shardUsername.isEmpty() ? properties.determinePassword() : shardPassword);
+            shards.add(shard);
+        }
+
+        return new ShardRoutingDataSource(shards);
+    }
+}
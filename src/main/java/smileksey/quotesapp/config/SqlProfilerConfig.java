@@ -0,0 +1,31 @@
+package smileksey.quotesapp.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import smileksey.quotesapp.profiling.ProfilingDataSource;
+import smileksey.quotesapp.profiling.SqlProfiler;
+
+import javax.sql.DataSource;
+
+//все запросы к БД проходят через ProfilingDataSource, который собирает статистику по формам запросов
+@Configuration
+public class SqlProfilerConfig {
+
+    //метод статический: BeanPostProcessor создается раньше остальных бинов, SqlProfiler запрашивается при обертке
+    @Bean
+    @ConditionalOnProperty(name = "quotes.sql.profiler.enabled", matchIfMissing = true)
+    public static BeanPostProcessor profilingDataSourcePostProcessor(ObjectProvider<SqlProfiler> profiler) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProfilingDataSource)) {
+                    return new ProfilingDataSource(dataSource, profiler.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
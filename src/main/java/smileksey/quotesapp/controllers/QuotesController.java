@@ -1,34 +1,82 @@
 package smileksey.quotesapp.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import smileksey.quotesapp.dto.QuoteBatchDto;
+import smileksey.quotesapp.dto.QuoteBatchErrorDto;
+import smileksey.quotesapp.dto.QuoteBatchResultDto;
 import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.dto.QuotesPageDto;
+import smileksey.quotesapp.dto.TrendingQuoteDto;
+import smileksey.quotesapp.dto.VoteDeltaDto;
+import smileksey.quotesapp.dto.VoteDto;
+import smileksey.quotesapp.dto.VoteResultDto;
+import smileksey.quotesapp.exceptions.InvalidPageRequestException;
+import smileksey.quotesapp.exceptions.InvalidSearchQueryException;
+import smileksey.quotesapp.exceptions.InvalidTrendingWindowException;
 import smileksey.quotesapp.exceptions.QuoteNotFoundException;
 import smileksey.quotesapp.exceptions.QuoteNotSavedException;
+import smileksey.quotesapp.exceptions.VoteRejectedException;
 import smileksey.quotesapp.models.Quote;
 import smileksey.quotesapp.models.User;
+import smileksey.quotesapp.services.LeaderboardResponses;
+import smileksey.quotesapp.services.LeaderboardStream;
 import smileksey.quotesapp.services.QuotesService;
 import smileksey.quotesapp.services.UsersService;
+import smileksey.quotesapp.util.AcceptEncoding;
 import smileksey.quotesapp.util.ErrorResponse;
 import smileksey.quotesapp.util.QuoteValidator;
+import smileksey.quotesapp.util.QuotesSort;
+import smileksey.quotesapp.util.TrendingWindow;
 import smileksey.quotesapp.util.ValidationErrorMessage;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/quotes")
 public class QuotesController {
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+    //случайная метка запуска приложения в ETag списков /top и /worst: версия рейтинга после перезапуска
+    //начинается заново и на разных экземплярах своя, а с меткой одинаковые ETag разных запусков не совпадают
+    private static final String LEADERBOARD_EPOCH = Long.toHexString(new SecureRandom().nextLong());
+
     private final QuotesService quotesService;
+    private final LeaderboardStream leaderboardStream;
+    private final LeaderboardResponses leaderboardResponses;
+    private final ObjectWriter ndjsonWriter;
 
     @Autowired
-    public QuotesController(QuotesService quotesService) {
+    public QuotesController(QuotesService quotesService, LeaderboardStream leaderboardStream, LeaderboardResponses leaderboardResponses,
+                            ObjectMapper objectMapper) {
         this.quotesService = quotesService;
+        this.leaderboardStream = leaderboardStream;
+        this.leaderboardResponses = leaderboardResponses;
+        //поток ответа закрывает и сбрасывает сам контроллер, а не Jackson после каждой записи
+        this.ndjsonWriter = objectMapper.writerFor(QuoteDto.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     //добавить новую цитату
@@ -45,28 +93,157 @@ public class QuotesController {
         return ResponseEntity.ok(HttpStatus.OK);
     }
 
+    //добавить пакет новых цитат одного пользователя
+    //пустые цитаты не сохраняются и возвращаются в списке ошибок, остальные цитаты пакета сохраняются
+    @PostMapping("/batch")
+    public QuoteBatchResultDto addQuotes(@RequestBody @Valid QuoteBatchDto quoteBatchDto, BindingResult bindingResult) {
+
+        if (bindingResult.hasErrors()) {
+            String errorMessage = ValidationErrorMessage.createMessage(bindingResult.getFieldErrors());
+            throw new QuoteNotSavedException(errorMessage);
+        }
+
+        QuoteBatchResultDto result = new QuoteBatchResultDto();
+        List<Quote> quotes = new ArrayList<>(quoteBatchDto.getQuotes().size());
+
+        for (int i = 0; i < quoteBatchDto.getQuotes().size(); i++) {
+            String content = quoteBatchDto.getQuotes().get(i);
+
+            if (content == null || content.isEmpty()) {
+                result.getErrors().add(new QuoteBatchErrorDto(i, "Content of a quote cannot be empty"));
+                continue;
+            }
+
+            Quote quote = new Quote();
+            quote.setContent(content);
+            quotes.add(quote);
+        }
+
+        User author = new User();
+        author.setEmail(quoteBatchDto.getUserEmail());
+        author.setPassword(quoteBatchDto.getUserPassword());
+
+        quotesService.addAll(author, quotes);
+
+        quotes.forEach(quote -> result.getSavedIds().add(quote.getId()));
+
+        return result;
+    }
+
+    //получить страницу списка цитат
+    //sort - id, votes или created; after - курсор из поля next предыдущей страницы
+    @GetMapping
+    public QuotesPageDto getQuotes(@RequestParam(value = "sort", defaultValue = "id") String sort,
+                                   @RequestParam(value = "after", required = false) String after,
+                                   @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return quotesService.findPage(QuotesSort.parse(sort), after, limit);
+    }
+
+    //найти цитаты, содержащие все слова из q (без учета регистра), сначала с наибольшим рейтингом
+    @GetMapping("/search")
+    public List<QuoteDto> search(@RequestParam("q") String query,
+                                 @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return quotesService.search(query, limit);
+    }
+
     //получить цитату по id
+    //если цитата не изменилась с прошлого запроса клиента (If-None-Match), возвращается 304 без тела
     @GetMapping("/{id}")
-    public QuoteDto getQuote(@PathVariable("id") int id) {
-        return convertToQuoteDto(quotesService.findById(id));
+    public QuoteDto getQuote(@PathVariable("id") int id, WebRequest request) {
+        QuoteDto quoteDto = quotesService.findById(id);
+
+        if (request.checkNotModified(quoteEtag(quoteDto))) {
+            return null;
+        }
+
+        return quoteDto;
     }
 
-    //получить случайную цитату
+    //получить случайную цитату, при weighted=true цитаты с большим рейтингом выпадают чаще
     @GetMapping("/random")
-    public QuoteDto getRandomQuote() {
-        return convertToQuoteDto(quotesService.findRandomQuote());
+    public QuoteDto getRandomQuote(@RequestParam(value = "weighted", defaultValue = "false") boolean weighted) {
+        return weighted ? quotesService.findWeightedRandomQuote() : quotesService.findRandomQuote();
     }
 
     //получить топ 10 цитат с наилучшими оценками
+    //списки лучших и худших цитат тоже поддерживают If-None-Match: ETag - хеш json самого списка, он не меняется
+    //от голосов за цитаты вне списка и от перезапуска приложения; тело ответа сериализуется один раз на версию
+    //списка и отдается готовым массивом байт
     @GetMapping("/top10")
-    public List<QuoteDto> getTopTen() {
-        return quotesService.findTopTen().stream().map(quote -> convertToQuoteDto(quote)).collect(Collectors.toList());
+    public ResponseEntity<byte[]> getTopTen(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return leaderboardResponse("top10", leaderboardResponses.top10(), acceptEncoding);
     }
 
     //получить топ 10 цитат с наихудшими оценками
     @GetMapping("/worst10")
-    public List<QuoteDto> getWorstTen() {
-        return quotesService.findWorstTen().stream().map(quote -> convertToQuoteDto(quote)).collect(Collectors.toList());
+    public ResponseEntity<byte[]> getWorstTen(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return leaderboardResponse("worst10", leaderboardResponses.worst10(), acceptEncoding);
+    }
+
+    //подписаться на изменения топ 10 лучших цитат (Server-Sent Events, событие top10 с текущим списком)
+    //новый список отправляется, только когда меняется состав или порядок цитат
+    @GetMapping(value = "/top10/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void streamTopTen(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        leaderboardStream.subscribe(LeaderboardStream.Board.TOP10, request, response);
+    }
+
+    //подписаться на изменения топ 10 худших цитат (событие worst10)
+    @GetMapping(value = "/worst10/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void streamWorstTen(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        leaderboardStream.subscribe(LeaderboardStream.Board.WORST10, request, response);
+    }
+
+    //получить n цитат с наилучшими оценками
+    @GetMapping("/top")
+    public List<QuoteDto> getTop(@RequestParam(value = "n", defaultValue = "10") int n, WebRequest request) {
+        if (request.checkNotModified(leaderboardEtag("top" + n))) {
+            return null;
+        }
+        return quotesService.findTop(n);
+    }
+
+    //получить n цитат с наихудшими оценками
+    @GetMapping("/worst")
+    public List<QuoteDto> getWorst(@RequestParam(value = "n", defaultValue = "10") int n, WebRequest request) {
+        if (request.checkNotModified(leaderboardEtag("worst" + n))) {
+            return null;
+        }
+        return quotesService.findWorst(n);
+    }
+
+    //получить n популярных сейчас цитат: с наибольшей суммой голосов за последний час, сутки или неделю
+    //window - 1h, 24h или 7d
+    @GetMapping("/trending")
+    public List<TrendingQuoteDto> getTrending(@RequestParam(value = "window", defaultValue = "24h") String window,
+                                              @RequestParam(value = "n", defaultValue = "10") int n) {
+        return quotesService.findTrending(TrendingWindow.parse(window), n);
+    }
+
+    //выгрузить все цитаты в формате NDJSON (одна цитата в формате json на строку)
+    //ответ передается потоком по мере чтения цитат из БД, без загрузки всех цитат в память
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export() {
+
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = new BufferedOutputStream(outputStream, EXPORT_BUFFER_SIZE);
+
+            try {
+                quotesService.exportAll(quoteDto -> {
+                    try {
+                        ndjsonWriter.writeValue(out, quoteDto);
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            out.flush();
+        };
+
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
     }
 
     //удалить конкретную цитату
@@ -92,24 +269,61 @@ public class QuotesController {
         return ResponseEntity.ok(HttpStatus.OK);
     }
 
+    //применить пакет анонимных голосов: массив {id, delta}, голоса за одну цитату суммируются
+    //в ответе для каждого id - фактическое изменение рейтинга и найдена ли цитата
+    //при разбиении на шарды пакет может быть записан частично: id шарда, запись в который не удалась, помечены failed
+    @PostMapping("/votes")
+    public List<VoteResultDto> voteAll(@RequestBody List<VoteDeltaDto> votes) {
+        return quotesService.voteAll(votes);
+    }
+
     //голосовать "за" конкретную цитату
+    //с email и паролем в теле запроса учитывается не больше одного голоса пользователя за цитату, без тела - анонимный голос
     @PatchMapping("/{id}/upvote")
-    public ResponseEntity<HttpStatus> upvote(@PathVariable("id") int id) {
+    public ResponseEntity<HttpStatus> upvote(@PathVariable("id") int id, @RequestBody(required = false) VoteDto voteDto) {
 
-        quotesService.upvote(id);
+        quotesService.upvote(id, convertToVoter(voteDto));
 
         return ResponseEntity.ok(HttpStatus.OK);
     }
 
     //голосовать "против" конкретной цитаты
     @PatchMapping("/{id}/downvote")
-    public ResponseEntity<HttpStatus> downvote(@PathVariable("id") int id) {
+    public ResponseEntity<HttpStatus> downvote(@PathVariable("id") int id, @RequestBody(required = false) VoteDto voteDto) {
 
-        quotesService.downvote(id);
+        quotesService.downvote(id, convertToVoter(voteDto));
 
         return ResponseEntity.ok(HttpStatus.OK);
     }
 
+    //ETag цитаты: id, рейтинг и время последнего изменения (текст и автор меняются только вместе со временем изменения)
+    private String quoteEtag(QuoteDto quoteDto) {
+        long updated = quoteDto.getDateOfUpdate() == null ? 0 : quoteDto.getDateOfUpdate().getTime();
+        return "\"" + quoteDto.getId() + "-" + quoteDto.getVotes() + "-" + updated + "\"";
+    }
+
+    //ETag списка из рейтинга: название списка, метка запуска и версия рейтинга, которая читается до получения самого списка
+    private String leaderboardEtag(String list) {
+        return "\"" + list + "-" + LEADERBOARD_EPOCH + "-" + quotesService.getLeaderboardVersion() + "\"";
+    }
+
+    //готовый ответ со списком из рейтинга, сжатый, если клиент принимает gzip (с весом q больше 0);
+    //у сжатого ответа отдельный ETag
+    //If-None-Match проверяет Spring по ETag ответа и при совпадении отправляет 304 без тела
+    private ResponseEntity<byte[]> leaderboardResponse(String list, LeaderboardResponses.Encoded encoded, String acceptEncoding) {
+        boolean gzip = AcceptEncoding.acceptsGzip(acceptEncoding);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag("\"" + list + "-" + encoded.getEtag() + (gzip ? "-gzip" : "") + "\"")
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_JSON);
+
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(encoded.getGzip());
+        }
+        return response.body(encoded.getJson());
+    }
+
     //конвертировать объект QuoteDto в объект Quote
     private Quote convertToQuote(QuoteDto quoteDto) {
         Quote quote = new Quote();
@@ -125,19 +339,17 @@ public class QuotesController {
         return quote;
     }
 
-    //конвертировать объект Quote в объект QuoteDto
-    private QuoteDto convertToQuoteDto(Quote quote) {
-        QuoteDto quoteDto = new QuoteDto();
+    //конвертировать объект VoteDto в автора голоса, null - анонимный голос
+    private User convertToVoter(VoteDto voteDto) {
+        if (voteDto == null || voteDto.getUserEmail() == null) {
+            return null;
+        }
 
-        quoteDto.setId(quote.getId());
-        quoteDto.setContent(quote.getContent());
-        quoteDto.setVotes(quote.getVotes());
-        quoteDto.setDateOfCreation(quote.getDateOfCreation());
-        quoteDto.setDateOfUpdate(quote.getDateOfUpdate());
-        quoteDto.setUserName(quote.getUser().getName());
-        quoteDto.setUserEmail(quote.getUser().getEmail());
+        User voter = new User();
+        voter.setEmail(voteDto.getUserEmail());
+        voter.setPassword(voteDto.getUserPassword());
 
-        return quoteDto;
+        return voter;
     }
 
     //обработка исключения QuoteNotSavedException  - отправка сообщения об ошибке клиенту
@@ -148,6 +360,38 @@ public class QuotesController {
         return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
     }
 
+    //обработка исключения InvalidPageRequestException  - отправка сообщения об ошибке клиенту
+    @ExceptionHandler
+    private ResponseEntity<ErrorResponse> handleException(InvalidPageRequestException e) {
+
+        ErrorResponse response = new ErrorResponse(e.getMessage());
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    //обработка исключения InvalidSearchQueryException  - отправка сообщения об ошибке клиенту
+    @ExceptionHandler
+    private ResponseEntity<ErrorResponse> handleException(InvalidSearchQueryException e) {
+
+        ErrorResponse response = new ErrorResponse(e.getMessage());
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    //обработка исключения InvalidTrendingWindowException  - отправка сообщения об ошибке клиенту
+    @ExceptionHandler
+    private ResponseEntity<ErrorResponse> handleException(InvalidTrendingWindowException e) {
+
+        ErrorResponse response = new ErrorResponse(e.getMessage());
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    //обработка исключения VoteRejectedException  - отправка сообщения об ошибке клиенту
+    @ExceptionHandler
+    private ResponseEntity<ErrorResponse> handleException(VoteRejectedException e) {
+
+        ErrorResponse response = new ErrorResponse(e.getMessage());
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
     //обработка исключения QuoteNotFoundException  - отправка сообщения об ошибке клиенту
     @ExceptionHandler
     private ResponseEntity<ErrorResponse> handleException(QuoteNotFoundException e) {
@@ -0,0 +1,212 @@
+package smileksey.quotesapp.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//DataSource с разделением чтения и записи: транзакции только для чтения (@Transactional(readOnly = true))
+//выполняются на одной из реплик, все остальные запросы - на основной БД
+//соединение с БД берется только при первом запросе (LazyConnectionDataSourceProxy): к этому моменту менеджер транзакций
+//уже отметил транзакцию как readOnly, и можно выбрать, куда ее направить
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+    //cookie, до истечения которой чтения клиента идут в основную БД (read-your-writes), значение - время в мс
+    public static final String READ_PRIMARY_COOKIE = "quotes-read-primary-until";
+    //имя транзакции только для чтения, которая выполняется в основной БД, а не на реплике, и не считается записью
+    //(например, загрузка в кэш: значение из отстающей реплики осталось бы в кэше до следующего изменения)
+    public static final String PRIMARY_READ_TRANSACTION = ReplicaRoutingDataSource.class.getName() + ".primaryRead";
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    private static final String READ_PRIMARY_ATTRIBUTE = ReplicaRoutingDataSource.class.getName() + ".readPrimary";
+
+    private final Router router;
+
+    //readYourWritesWindow - сколько после записи чтения этого клиента идут в основную БД (0 - отключено)
+    //retryDownReplicaAfter - сколько не обращаться к реплике, к которой не удалось подключиться
+    public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, ReplicaSelection selection,
+                                    Duration readYourWritesWindow, Duration retryDownReplicaAfter) {
+        this(new Router(primary, replicas, selection, readYourWritesWindow, retryDownReplicaAfter));
+    }
+
+    private ReplicaRoutingDataSource(Router router) {
+        super(router);
+        this.router = router;
+    }
+
+    //закрыть пулы соединений основной БД и реплик
+    @Override
+    public void close() throws Exception {
+        router.close();
+    }
+
+    private static final class Router extends AbstractDataSource {
+        private final DataSource primary;
+        private final List<? extends DataSource> replicas;
+        private final ReplicaSelection selection;
+        private final long readYourWritesMillis;
+        private final long retryDownReplicaNanos;
+
+        private final AtomicInteger nextReplica = new AtomicInteger();
+        //время (System.nanoTime), до которого реплика считается недоступной; 0 - доступна
+        private final AtomicLongArray downUntil;
+
+        private Router(DataSource primary, List<? extends DataSource> replicas, ReplicaSelection selection,
+                       Duration readYourWritesWindow, Duration retryDownReplicaAfter) {
+            this.primary = primary;
+            this.replicas = List.copyOf(replicas);
+            this.selection = selection;
+            this.readYourWritesMillis = readYourWritesWindow.toMillis();
+            this.retryDownReplicaNanos = retryDownReplicaAfter.toNanos();
+            this.downUntil = new AtomicLongArray(replicas.size());
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                    rememberWrite();
+                }
+                return primary.getConnection();
+            }
+
+            if (replicas.isEmpty() || PRIMARY_READ_TRANSACTION.equals(TransactionSynchronizationManager.getCurrentTransactionName())
+                    || readPrimaryRequired()) {
+                return primary.getConnection();
+            }
+
+            //начиная с выбранной реплики перебираем все доступные; если ни одна не отвечает - основная БД
+            int first = chooseReplica();
+            for (int i = 0; i < replicas.size(); i++) {
+                int index = (first + i) % replicas.size();
+
+                if (isDown(index)) {
+                    continue;
+                }
+
+                try {
+                    return replicas.get(index).getConnection();
+                } catch (SQLException e) {
+                    downUntil.set(index, System.nanoTime() + retryDownReplicaNanos);
+                    log.warn("Read replica {} is unavailable, reads go to other replicas or the primary: {}", index, e.getMessage());
+                }
+            }
+
+            return primary.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+
+        private int chooseReplica() {
+            if (selection == ReplicaSelection.ROUND_ROBIN) {
+                return Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+            }
+
+            int best = 0;
+            int bestActive = Integer.MAX_VALUE;
+            for (int i = 0; i < replicas.size(); i++) {
+                int active = activeConnections(replicas.get(i));
+                if (!isDown(i) && active < bestActive) {
+                    best = i;
+                    bestActive = active;
+                }
+            }
+            return best;
+        }
+
+        private boolean isDown(int index) {
+            long until = downUntil.get(index);
+            return until != 0 && System.nanoTime() - until < 0;
+        }
+
+        //запись в рамках HTTP-запроса: до конца запроса и еще readYourWritesWindow (через cookie) клиент читает из основной БД
+        private void rememberWrite() {
+            if (readYourWritesMillis <= 0 || !(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+                return;
+            }
+
+            if (attributes.getAttribute(READ_PRIMARY_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) == Boolean.TRUE) {
+                return;
+            }
+            attributes.setAttribute(READ_PRIMARY_ATTRIBUTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+
+            HttpServletResponse response = attributes.getResponse();
+            if (response != null && !response.isCommitted()) {
+                Cookie cookie = new Cookie(READ_PRIMARY_COOKIE, Long.toString(System.currentTimeMillis() + readYourWritesMillis));
+                cookie.setPath("/");
+                cookie.setHttpOnly(true);
+                cookie.setMaxAge((int) Math.max(1, (readYourWritesMillis + 999) / 1000));
+                response.addCookie(cookie);
+            }
+        }
+
+        private boolean readPrimaryRequired() {
+            if (readYourWritesMillis <= 0 || !(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+                return false;
+            }
+
+            Object readPrimary = attributes.getAttribute(READ_PRIMARY_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (readPrimary == null) {
+                readPrimary = hasReadPrimaryCookie(attributes.getRequest());
+                attributes.setAttribute(READ_PRIMARY_ATTRIBUTE, readPrimary, RequestAttributes.SCOPE_REQUEST);
+            }
+            return readPrimary == Boolean.TRUE;
+        }
+
+        private static boolean hasReadPrimaryCookie(HttpServletRequest request) {
+            if (request.getCookies() == null) {
+                return false;
+            }
+
+            for (Cookie cookie : request.getCookies()) {
+                if (READ_PRIMARY_COOKIE.equals(cookie.getName())) {
+                    try {
+                        return Long.parseLong(cookie.getValue()) > System.currentTimeMillis();
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static int activeConnections(DataSource dataSource) {
+            if (dataSource instanceof HikariDataSource hikari) {
+                HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+                return pool == null ? 0 : pool.getActiveConnections();
+            }
+            return 0;
+        }
+
+        private void close() throws Exception {
+            for (DataSource replica : replicas) {
+                if (replica instanceof AutoCloseable closeable) {
+                    closeable.close();
+                }
+            }
+            if (primary instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
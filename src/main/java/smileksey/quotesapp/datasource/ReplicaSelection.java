@@ -0,0 +1,9 @@
+package smileksey.quotesapp.datasource;
+
+//способ выбора реплики для транзакции только для чтения
+public enum ReplicaSelection {
+    //реплики по очереди
+    ROUND_ROBIN,
+    //реплика с наименьшим количеством занятых соединений пула
+    LEAST_BUSY
+}
@@ -0,0 +1,50 @@
+package smileksey.quotesapp.datasource;
+
+//шард, с которым работает текущий поток: к нему обращается ShardRoutingDataSource при получении соединения,
+//и для него ShardedQuoteIdGenerator выдает id новых цитат
+//без привязки поток работает с шардом 0 (основная БД) из одного шарда
+public final class ShardContext {
+
+    private static final ShardContext DEFAULT = new ShardContext(0, 1);
+    private static final ThreadLocal<ShardContext> CURRENT = new ThreadLocal<>();
+
+    private final int shard;
+    private final int count;
+
+    public ShardContext(int shard, int count) {
+        this.shard = shard;
+        this.count = count;
+    }
+
+    //текущий шард потока
+    public static ShardContext current() {
+        ShardContext current = CURRENT.get();
+        return current == null ? DEFAULT : current;
+    }
+
+    //привязать поток к шарду, возвращает предыдущую привязку для restore()
+    public static ShardContext set(ShardContext context) {
+        ShardContext previous = CURRENT.get();
+        CURRENT.set(context);
+        return previous;
+    }
+
+    //вернуть привязку, которая была до set()
+    public static void restore(ShardContext previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    //номер шарда
+    public int getShard() {
+        return shard;
+    }
+
+    //общее количество шардов
+    public int getCount() {
+        return count;
+    }
+}
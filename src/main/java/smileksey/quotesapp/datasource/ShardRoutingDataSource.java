@@ -0,0 +1,60 @@
+package smileksey.quotesapp.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+//DataSource из нескольких БД (шардов): соединение берется из шарда, к которому привязан поток (ShardContext)
+//как и в ReplicaRoutingDataSource, соединение берется только при первом запросе, поэтому шард можно выбрать уже
+//после начала транзакции - до первого обращения к БД
+public class ShardRoutingDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+    private final List<? extends DataSource> shards;
+
+    public ShardRoutingDataSource(List<? extends DataSource> shards) {
+        this(List.copyOf(shards), new Router(List.copyOf(shards)));
+    }
+
+    private ShardRoutingDataSource(List<? extends DataSource> shards, Router router) {
+        super(router);
+        this.shards = shards;
+    }
+
+    //закрыть пулы соединений всех шардов
+    @Override
+    public void close() throws Exception {
+        for (DataSource shard : shards) {
+            if (shard instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private static final class Router extends AbstractDataSource {
+        private final List<? extends DataSource> shards;
+
+        private Router(List<? extends DataSource> shards) {
+            this.shards = shards;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            ShardContext context = ShardContext.current();
+
+            if (context.getCount() != 1 && context.getCount() != shards.size()) {
+                throw new IllegalStateException("Shard context for " + context.getCount() + " shards, but there are " + shards.size());
+            }
+
+            return shards.get(context.getShard()).getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package smileksey.quotesapp.datasource;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+//генератор id цитат с учетом шардов: id = local * count + shard, где local - значение из последовательности шарда
+//поэтому шард цитаты определяется по ее id (id % count), а id в разных шардах не пересекаются
+//из последовательности берется сразу диапазон [value, value + increment_size) - как pooled-lo в Hibernate,
+//диапазон свой для каждого шарда; с одним шардом id совпадает со значением из последовательности
+//шард новой цитаты задает QuotesService (QuoteShards.useShardForNewQuotes) до первого запроса в транзакции
+public class ShardedQuoteIdGenerator extends SequenceStyleGenerator {
+
+    private final Map<Integer, Block> blocks = new ConcurrentHashMap<>();
+    private int blockSize;
+
+    @Override
+    public void configure(Type type, Properties parameters, ServiceRegistry serviceRegistry) {
+        super.configure(type, parameters, serviceRegistry);
+        this.blockSize = getDatabaseStructure().getIncrementSize();
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        ShardContext context = ShardContext.current();
+        Block block = blocks.computeIfAbsent(context.getShard(), shard -> new Block());
+        long local;
+
+        synchronized (block) {
+            if (block.next == block.end) {
+                long start = getDatabaseStructure().buildCallback(session).getNextValue().makeValue().longValue();
+                block.next = start;
+                block.end = start + blockSize;
+            }
+            local = block.next++;
+        }
+
+        return Math.toIntExact(local * context.getCount() + context.getShard());
+    }
+
+    //еще не выданные значения из последнего диапазона шарда
+    private static final class Block {
+        private long next;
+        private long end;
+    }
+}
@@ -0,0 +1,45 @@
+package smileksey.quotesapp.dto;
+
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+//пакет новых цитат от одного пользователя
+public class QuoteBatchDto {
+
+    @NotNull
+    @Email(message = "Email is not valid")
+    private String userEmail;
+    @NotNull
+    @NotEmpty(message = "User's password cannot be empty")
+    private String userPassword;
+    @NotNull
+    @NotEmpty(message = "List of quotes cannot be empty")
+    private List<String> quotes;
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public String getUserPassword() {
+        return userPassword;
+    }
+
+    public void setUserPassword(String userPassword) {
+        this.userPassword = userPassword;
+    }
+
+    public List<String> getQuotes() {
+        return quotes;
+    }
+
+    public void setQuotes(List<String> quotes) {
+        this.quotes = quotes;
+    }
+}
@@ -0,0 +1,29 @@
+package smileksey.quotesapp.dto;
+
+//ошибка валидации элемента пакета, index - позиция цитаты в пакете
+public class QuoteBatchErrorDto {
+
+    private int index;
+    private String message;
+
+    public QuoteBatchErrorDto(int index, String message) {
+        this.index = index;
+        this.message = message;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
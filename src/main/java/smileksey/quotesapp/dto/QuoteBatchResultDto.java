@@ -0,0 +1,27 @@
+package smileksey.quotesapp.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//результат пакетного добавления цитат: id сохраненных цитат и ошибки по отдельным элементам пакета
+public class QuoteBatchResultDto {
+
+    private List<Integer> savedIds = new ArrayList<>();
+    private List<QuoteBatchErrorDto> errors = new ArrayList<>();
+
+    public List<Integer> getSavedIds() {
+        return savedIds;
+    }
+
+    public void setSavedIds(List<Integer> savedIds) {
+        this.savedIds = savedIds;
+    }
+
+    public List<QuoteBatchErrorDto> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<QuoteBatchErrorDto> errors) {
+        this.errors = errors;
+    }
+}
@@ -23,6 +23,20 @@ public class QuoteDto {
     private Date dateOfCreation;
     private Date dateOfUpdate;
 
+    public QuoteDto() {
+    }
+
+    //конструктор для JPQL-проекций (select new ...) - данные читаются сразу в DTO, без создания сущностей
+    public QuoteDto(int id, String content, String userName, String userEmail, int votes, Date dateOfCreation, Date dateOfUpdate) {
+        this.id = id;
+        this.content = content;
+        this.userName = userName;
+        this.userEmail = userEmail;
+        this.votes = votes;
+        this.dateOfCreation = dateOfCreation;
+        this.dateOfUpdate = dateOfUpdate;
+    }
+
     public int getId() {
         return id;
     }
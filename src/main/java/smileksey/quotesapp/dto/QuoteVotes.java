@@ -0,0 +1,7 @@
+package smileksey.quotesapp.dto;
+
+//проекция: id цитаты и ее рейтинг
+public interface QuoteVotes {
+    int getId();
+    int getVotes();
+}
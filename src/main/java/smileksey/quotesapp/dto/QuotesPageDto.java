@@ -0,0 +1,31 @@
+package smileksey.quotesapp.dto;
+
+import java.util.List;
+
+//страница списка цитат; next - курсор следующей страницы или null, если страница последняя
+public class QuotesPageDto {
+
+    private List<QuoteDto> quotes;
+    private String next;
+
+    public QuotesPageDto(List<QuoteDto> quotes, String next) {
+        this.quotes = quotes;
+        this.next = next;
+    }
+
+    public List<QuoteDto> getQuotes() {
+        return quotes;
+    }
+
+    public void setQuotes(List<QuoteDto> quotes) {
+        this.quotes = quotes;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
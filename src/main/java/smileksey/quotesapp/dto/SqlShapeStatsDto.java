@@ -0,0 +1,52 @@
+package smileksey.quotesapp.dto;
+
+//статистика одной формы SQL-запроса: вызовы, ошибки, время (мс) и строки
+//rows - прочитанные строки для SELECT и измененные строки для INSERT/UPDATE/DELETE
+public class SqlShapeStatsDto {
+
+    private final String shape;
+    private final long calls;
+    private final long errors;
+    private final double totalMs;
+    private final double avgMs;
+    private final double maxMs;
+    private final long rows;
+
+    public SqlShapeStatsDto(String shape, long calls, long errors, double totalMs, double avgMs, double maxMs, long rows) {
+        this.shape = shape;
+        this.calls = calls;
+        this.errors = errors;
+        this.totalMs = totalMs;
+        this.avgMs = avgMs;
+        this.maxMs = maxMs;
+        this.rows = rows;
+    }
+
+    public String getShape() {
+        return shape;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getTotalMs() {
+        return totalMs;
+    }
+
+    public double getAvgMs() {
+        return avgMs;
+    }
+
+    public double getMaxMs() {
+        return maxMs;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+}
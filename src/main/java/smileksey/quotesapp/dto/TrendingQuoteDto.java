@@ -0,0 +1,29 @@
+package smileksey.quotesapp.dto;
+
+//цитата в списке популярных сейчас: windowVotes - сумма голосов "за" и "против" за выбранное окно
+public class TrendingQuoteDto {
+
+    private QuoteDto quote;
+    private int windowVotes;
+
+    public TrendingQuoteDto(QuoteDto quote, int windowVotes) {
+        this.quote = quote;
+        this.windowVotes = windowVotes;
+    }
+
+    public QuoteDto getQuote() {
+        return quote;
+    }
+
+    public void setQuote(QuoteDto quote) {
+        this.quote = quote;
+    }
+
+    public int getWindowVotes() {
+        return windowVotes;
+    }
+
+    public void setWindowVotes(int windowVotes) {
+        this.windowVotes = windowVotes;
+    }
+}
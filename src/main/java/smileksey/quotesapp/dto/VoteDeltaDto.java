@@ -0,0 +1,32 @@
+package smileksey.quotesapp.dto;
+
+//элемент пакета голосов: изменение рейтинга цитаты id на delta
+public class VoteDeltaDto {
+
+    private int id;
+    private int delta;
+
+    public VoteDeltaDto() {
+    }
+
+    public VoteDeltaDto(int id, int delta) {
+        this.id = id;
+        this.delta = delta;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+
+    public void setDelta(int delta) {
+        this.delta = delta;
+    }
+}
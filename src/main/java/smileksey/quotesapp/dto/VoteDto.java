@@ -0,0 +1,24 @@
+package smileksey.quotesapp.dto;
+
+//автор голоса; если тело запроса не передано, голос анонимный
+public class VoteDto {
+
+    private String userEmail;
+    private String userPassword;
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public String getUserPassword() {
+        return userPassword;
+    }
+
+    public void setUserPassword(String userPassword) {
+        this.userPassword = userPassword;
+    }
+}
@@ -0,0 +1,54 @@
+package smileksey.quotesapp.dto;
+
+//результат пакета голосов для одной цитаты: delta - фактическое изменение рейтинга (с учетом нижней границы),
+//found = false - цитата не найдена, failed = true - шард цитаты не записан, голоса за нее не применены
+public class VoteResultDto {
+
+    private int id;
+    private int delta;
+    private boolean found;
+    private boolean failed;
+
+    public VoteResultDto(int id, int delta, boolean found) {
+        this(id, delta, found, false);
+    }
+
+    public VoteResultDto(int id, int delta, boolean found, boolean failed) {
+        this.id = id;
+        this.delta = delta;
+        this.found = found;
+        this.failed = failed;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+
+    public void setDelta(int delta) {
+        this.delta = delta;
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public void setFound(boolean found) {
+        this.found = found;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public void setFailed(boolean failed) {
+        this.failed = failed;
+    }
+}
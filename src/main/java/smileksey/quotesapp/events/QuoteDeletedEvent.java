@@ -0,0 +1,15 @@
+package smileksey.quotesapp.events;
+
+//событие: цитата удалена
+public class QuoteDeletedEvent {
+
+    private final int id;
+
+    public QuoteDeletedEvent(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,17 @@
+package smileksey.quotesapp.events;
+
+import smileksey.quotesapp.models.Quote;
+
+//событие: цитата добавлена или изменена
+public class QuoteSavedEvent {
+
+    private final Quote quote;
+
+    public QuoteSavedEvent(Quote quote) {
+        this.quote = quote;
+    }
+
+    public Quote getQuote() {
+        return quote;
+    }
+}
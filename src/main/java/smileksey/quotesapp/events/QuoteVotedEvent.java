@@ -0,0 +1,34 @@
+package smileksey.quotesapp.events;
+
+//событие: рейтинг цитаты изменился на delta (рейтинг не может стать меньше нуля)
+//pending - голоса учтены в накопителе VoteAggregator и еще не записаны в БД: нижняя граница применится
+//к их сумме при записи, а фактическое изменение рейтинга придет в QuoteVotesFlushedEvent;
+//иначе delta - фактическое изменение рейтинга в БД
+public class QuoteVotedEvent {
+
+    private final int id;
+    private final int delta;
+    private final boolean pending;
+
+    public QuoteVotedEvent(int id, int delta) {
+        this(id, delta, false);
+    }
+
+    public QuoteVotedEvent(int id, int delta, boolean pending) {
+        this.id = id;
+        this.delta = delta;
+        this.pending = pending;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+}
@@ -0,0 +1,30 @@
+package smileksey.quotesapp.events;
+
+import java.util.Map;
+import java.util.Set;
+
+//событие: накопленные в памяти голоса за цитаты записаны в БД
+//deltas - записанные суммы голосов (id -> сумма), applied - фактическое изменение рейтинга в БД (id -> изменение);
+//удаленных цитат в applied нет
+public class QuoteVotesFlushedEvent {
+
+    private final Map<Integer, Integer> deltas;
+    private final Map<Integer, Integer> applied;
+
+    public QuoteVotesFlushedEvent(Map<Integer, Integer> deltas, Map<Integer, Integer> applied) {
+        this.deltas = deltas;
+        this.applied = applied;
+    }
+
+    public Set<Integer> getIds() {
+        return deltas.keySet();
+    }
+
+    public Map<Integer, Integer> getDeltas() {
+        return deltas;
+    }
+
+    public Map<Integer, Integer> getApplied() {
+        return applied;
+    }
+}
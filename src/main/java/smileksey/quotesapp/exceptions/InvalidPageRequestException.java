@@ -0,0 +1,7 @@
+package smileksey.quotesapp.exceptions;
+
+public class InvalidPageRequestException extends RuntimeException {
+    public InvalidPageRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package smileksey.quotesapp.exceptions;
+
+public class InvalidSearchQueryException extends RuntimeException {
+    public InvalidSearchQueryException(String message) {
+        super(message);
+    }
+}
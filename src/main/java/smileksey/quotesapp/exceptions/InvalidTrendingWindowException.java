@@ -0,0 +1,7 @@
+package smileksey.quotesapp.exceptions;
+
+public class InvalidTrendingWindowException extends RuntimeException {
+    public InvalidTrendingWindowException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package smileksey.quotesapp.exceptions;
+
+public class VoteRejectedException extends RuntimeException {
+    public VoteRejectedException(String message) {
+        super(message);
+    }
+}
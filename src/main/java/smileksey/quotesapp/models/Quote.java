@@ -1,14 +1,26 @@
 package smileksey.quotesapp.models;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import java.util.Date;
 
 @Entity
-@Table(name = "quote")
+@Table(name = "quote", indexes = {
+        @Index(name = "quote_votes_id_idx", columnList = "votes DESC, id"),
+        @Index(name = "quote_date_of_creation_id_idx", columnList = "date_of_creation DESC, id DESC")
+})
 public class Quote {
+    //id из последовательности с шагом 50: Hibernate получает сразу диапазон id и может вставлять цитаты пакетами
+    //при разбиении на шарды id также определяет шард цитаты (см. ShardedQuoteIdGenerator)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "quote_id_seq")
+    @GenericGenerator(name = "quote_id_seq", strategy = "smileksey.quotesapp.datasource.ShardedQuoteIdGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "quote_id_seq"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     @Column(name = "id")
     private int id;
     @Column(name = "content")
@@ -16,13 +28,16 @@ public class Quote {
     @Column(name = "date_of_creation")
     @Temporal(TemporalType.DATE)
     private Date dateOfCreation;
+    //время изменения с точностью до миллисекунд - по нему строится ETag цитаты
     @Column(name = "date_of_update")
-    @Temporal(TemporalType.DATE)
+    @Temporal(TemporalType.TIMESTAMP)
     private Date dateOfUpdate;
-    @ManyToOne
+    //автор загружается только при обращении к нему; для чтения цитат используются проекции в QuoteDto
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", referencedColumnName = "id")
     private User user;
-    @Column(name = "votes")
+    //рейтинг меняется только запросами UPDATE при голосовании, сохранение цитаты его не перезаписывает
+    @Column(name = "votes", updatable = false)
     private int votes;
 
     public Quote() {
@@ -0,0 +1,84 @@
+package smileksey.quotesapp.models;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+//голос пользователя за цитату: у каждого пользователя не больше одного голоса за цитату, direction - 1 ("за") или -1 ("против")
+//effect - на сколько голоса пользователя изменили рейтинг цитаты (-1, 0 или 1)
+//строки читаются и изменяются через QuoteVotersRepository, сущность описывает таблицу
+@Entity
+@Table(name = "quote_vote")
+@IdClass(QuoteVote.Key.class)
+public class QuoteVote {
+    @Id
+    @Column(name = "quote_id")
+    private int quoteId;
+    @Id
+    @Column(name = "user_id")
+    private int userId;
+    @Column(name = "direction", nullable = false)
+    private short direction;
+    @Column(name = "effect", nullable = false)
+    private short effect;
+
+    public QuoteVote() {
+    }
+
+    public int getQuoteId() {
+        return quoteId;
+    }
+
+    public void setQuoteId(int quoteId) {
+        this.quoteId = quoteId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public short getDirection() {
+        return direction;
+    }
+
+    public void setDirection(short direction) {
+        this.direction = direction;
+    }
+
+    public short getEffect() {
+        return effect;
+    }
+
+    public void setEffect(short effect) {
+        this.effect = effect;
+    }
+
+    //составной первичный ключ (quote_id, user_id)
+    public static class Key implements Serializable {
+        private int quoteId;
+        private int userId;
+
+        public Key() {
+        }
+
+        public Key(int quoteId, int userId) {
+            this.quoteId = quoteId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && other.quoteId == quoteId && other.userId == userId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(quoteId, userId);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package smileksey.quotesapp.profiling;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+//DataSource, который измеряет время выполнения каждого SQL-запроса и передает его в SqlProfiler
+//соединения, запросы и ResultSet оборачиваются классами, которые напрямую вызывают методы исходных объектов:
+//методы execute* замеряются (ProfilingStatement), next() у ResultSet считает прочитанные строки (RowCountingResultSet),
+//все остальные вызовы, в том числе чтение значений из ResultSet, передаются без изменений и без рефлексии
+public class ProfilingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private final SqlProfiler profiler;
+
+    public ProfilingDataSource(DataSource targetDataSource, SqlProfiler profiler) {
+        super(targetDataSource);
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return new ProfilingConnection(super.getConnection(), profiler);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return new ProfilingConnection(super.getConnection(username, password), profiler);
+    }
+
+    //закрыть исходный DataSource (пул соединений) при остановке приложения
+    @Override
+    public void close() throws Exception {
+        if (getTargetDataSource() instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
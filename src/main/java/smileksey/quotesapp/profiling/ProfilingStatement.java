@@ -0,0 +1,377 @@
+package smileksey.quotesapp.profiling;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+//запрос, который измеряет время выполнения методов execute* и передает его в SqlProfiler вместе с количеством строк:
+//измененных - из результата execute*, прочитанных - через RowCountingResultSet; остальные методы без изменений
+//передаются исходному запросу
+class ProfilingStatement implements Statement {
+
+    private final Statement statement;
+    final SqlProfiler profiler;
+    //текст PreparedStatement; у обычного Statement текст передается в execute*
+    final String preparedSql;
+    private String batchSql;
+    private int batchSize;
+    private SqlProfiler.ShapeStats lastStats;
+
+    ProfilingStatement(Statement statement, String preparedSql, SqlProfiler profiler) {
+        this.statement = statement;
+        this.preparedSql = preparedSql;
+        this.profiler = profiler;
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        return measure(sql, false, () -> statement.execute(sql));
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        return measure(sql, false, () -> statement.execute(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        return measure(sql, false, () -> statement.execute(sql, columnIndexes));
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        return measure(sql, false, () -> statement.execute(sql, columnNames));
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        return countRows(measure(sql, false, () -> statement.executeQuery(sql)));
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        return measure(sql, false, () -> statement.executeUpdate(sql));
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return measure(sql, false, () -> statement.executeUpdate(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return measure(sql, false, () -> statement.executeUpdate(sql, columnIndexes));
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        return measure(sql, false, () -> statement.executeUpdate(sql, columnNames));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql) throws SQLException {
+        return measure(sql, false, () -> statement.executeLargeUpdate(sql));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return measure(sql, false, () -> statement.executeLargeUpdate(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return measure(sql, false, () -> statement.executeLargeUpdate(sql, columnIndexes));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+        return measure(sql, false, () -> statement.executeLargeUpdate(sql, columnNames));
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        return measure(batchSql(), true, statement::executeBatch);
+    }
+
+    @Override
+    public long[] executeLargeBatch() throws SQLException {
+        return measure(batchSql(), true, statement::executeLargeBatch);
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        statement.addBatch(sql);
+        batchSql = sql;
+        batchSize++;
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return countRows(statement.getResultSet());
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return statement.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return statement.isWrapperFor(iface);
+    }
+
+    //выполнить запрос sql (при batch - накопленный пакет) и передать время и количество измененных строк в SqlProfiler
+    <T> T measure(String sql, boolean batch, Execution<T> execution) throws SQLException {
+        int executedBatchSize = batch ? batchSize : 1;
+        if (batch) {
+            batchSize = 0;
+        }
+
+        long start = System.nanoTime();
+        T result;
+
+        try {
+            result = execution.execute();
+        } catch (SQLException | RuntimeException e) {
+            record(sql, System.nanoTime() - start, 0, executedBatchSize, true);
+            throw e;
+        }
+
+        lastStats = record(sql, System.nanoTime() - start, affectedRows(result), executedBatchSize, false);
+        return result;
+    }
+
+    //строки ResultSet последнего выполненного запроса учитываются в его статистике
+    ResultSet countRows(ResultSet resultSet) {
+        return resultSet == null || lastStats == null ? resultSet : new RowCountingResultSet(resultSet, lastStats);
+    }
+
+    //запрос добавлен в пакет PreparedStatement.addBatch()
+    void addedToBatch() {
+        batchSize++;
+    }
+
+    //текст пакета: у PreparedStatement - его текст, у Statement - последний добавленный в пакет запрос
+    private String batchSql() {
+        return preparedSql == null ? batchSql : preparedSql;
+    }
+
+    private SqlProfiler.ShapeStats record(String sql, long elapsedNanos, long rows, int executedBatchSize, boolean failed) {
+        return sql == null ? null : profiler.record(sql, elapsedNanos, rows, executedBatchSize, failed);
+    }
+
+    //количество измененных строк из результата executeUpdate/executeBatch
+    private static long affectedRows(Object result) {
+        if (result instanceof Integer count) {
+            return count;
+        }
+        if (result instanceof Long count) {
+            return count;
+        }
+        long rows = 0;
+        if (result instanceof int[] counts) {
+            for (int count : counts) {
+                rows += Math.max(count, 0);
+            }
+        } else if (result instanceof long[] counts) {
+            for (long count : counts) {
+                rows += Math.max(count, 0);
+            }
+        }
+        return rows;
+    }
+
+    //остальные методы передаются исходному запросу
+    @Override
+    public void close() throws SQLException {
+        statement.close();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return statement.getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        statement.setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return statement.getMaxRows();
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        statement.setMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        statement.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return statement.getQueryTimeout();
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        statement.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        statement.cancel();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return statement.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        statement.clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        statement.setCursorName(name);
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return statement.getUpdateCount();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return statement.getMoreResults();
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        statement.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return statement.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        statement.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return statement.getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return statement.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return statement.getResultSetType();
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        statement.clearBatch();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return statement.getConnection();
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        return statement.getMoreResults(current);
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return statement.getGeneratedKeys();
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return statement.getResultSetHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return statement.isClosed();
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        statement.setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return statement.isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        statement.closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return statement.isCloseOnCompletion();
+    }
+
+    @Override
+    public long getLargeUpdateCount() throws SQLException {
+        return statement.getLargeUpdateCount();
+    }
+
+    @Override
+    public void setLargeMaxRows(long max) throws SQLException {
+        statement.setLargeMaxRows(max);
+    }
+
+    @Override
+    public long getLargeMaxRows() throws SQLException {
+        return statement.getLargeMaxRows();
+    }
+
+    @Override
+    public String enquoteLiteral(String val) throws SQLException {
+        return statement.enquoteLiteral(val);
+    }
+
+    @Override
+    public String enquoteIdentifier(String identifier, boolean alwaysQuote) throws SQLException {
+        return statement.enquoteIdentifier(identifier, alwaysQuote);
+    }
+
+    @Override
+    public boolean isSimpleIdentifier(String identifier) throws SQLException {
+        return statement.isSimpleIdentifier(identifier);
+    }
+
+    @Override
+    public String enquoteNCharLiteral(String val) throws SQLException {
+        return statement.enquoteNCharLiteral(val);
+    }
+
+    //выполнение запроса исходным Statement
+    @FunctionalInterface
+    interface Execution<T> {
+        T execute() throws SQLException;
+    }
+}
@@ -0,0 +1,34 @@
+package smileksey.quotesapp.profiling;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import smileksey.quotesapp.dto.SqlShapeStatsDto;
+
+import java.util.List;
+
+//таблица форм SQL-запросов: GET /actuator/sqlprofile, сброс статистики - DELETE /actuator/sqlprofile
+//по HTTP открывается, только если добавлена в management.endpoints.web.exposure.include (по умолчанию нет)
+@Component
+@Endpoint(id = "sqlprofile")
+public class SqlProfileEndpoint {
+
+    private final SqlProfiler profiler;
+
+    @Autowired
+    public SqlProfileEndpoint(SqlProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @ReadOperation
+    public List<SqlShapeStatsDto> shapes() {
+        return profiler.snapshot();
+    }
+
+    @DeleteOperation
+    public void reset() {
+        profiler.reset();
+    }
+}
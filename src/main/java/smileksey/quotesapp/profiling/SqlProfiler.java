@@ -0,0 +1,223 @@
+package smileksey.quotesapp.profiling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import smileksey.quotesapp.dto.SqlShapeStatsDto;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+//статистика SQL-запросов по "формам": текст запроса, в котором литералы заменены на ?, а списки IN (?, ?, ...) свернуты,
+//комментарии (например, добавленные Hibernate при hibernate.use_sql_comments) отброшены
+//счетчики формы - LongAdder, поэтому параллельные запросы не блокируют друг друга
+@Component
+public class SqlProfiler {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlProfiler.class);
+
+    //все формы сверх лимита учитываются в одной строке, чтобы запросы со встроенными значениями не раздували таблицу
+    static final String OTHER_SHAPE = "<other>";
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+
+    private final long slowQueryNanos;
+    private final int maxShapes;
+
+    //нормализованный текст -> статистика
+    private final Map<String, ShapeStats> shapes = new ConcurrentHashMap<>();
+    //исходный текст -> статистика: Hibernate выполняет одни и те же строки, поэтому нормализация выполняется один раз
+    private final Map<String, ShapeStats> shapesBySql = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SqlProfiler(@Value("${quotes.sql.slow-query-threshold:200ms}") Duration slowQueryThreshold,
+                       @Value("${quotes.sql.profiler.max-shapes:1000}") int maxShapes) {
+        this.slowQueryNanos = slowQueryThreshold.toNanos();
+        this.maxShapes = maxShapes;
+    }
+
+    //учесть выполнение запроса; rows - количество измененных строк (для запросов на чтение строки учитываются позже,
+    //по мере чтения ResultSet, через возвращенную статистику)
+    ShapeStats record(String sql, long elapsedNanos, long rows, int batchSize, boolean failed) {
+        ShapeStats stats = statsOf(sql);
+
+        stats.calls.increment();
+        stats.totalNanos.add(elapsedNanos);
+        stats.maxNanos.accumulate(elapsedNanos);
+        if (rows > 0) {
+            stats.rows.add(rows);
+        }
+        if (failed) {
+            stats.errors.increment();
+        }
+
+        if (elapsedNanos >= slowQueryNanos) {
+            log.warn("Slow SQL query: {} ms, {} bind parameters{}: {}", elapsedNanos / 1_000_000,
+                    countBindParameters(sql), batchSize > 1 ? " x " + batchSize + " rows in batch" : "", sql);
+        }
+
+        return stats;
+    }
+
+    //таблица форм запросов, сначала формы с наибольшим суммарным временем
+    public List<SqlShapeStatsDto> snapshot() {
+        List<SqlShapeStatsDto> result = new ArrayList<>(shapes.size());
+
+        shapes.forEach((shape, stats) -> {
+            long calls = stats.calls.sum();
+            long totalNanos = stats.totalNanos.sum();
+            result.add(new SqlShapeStatsDto(shape, calls, stats.errors.sum(), totalNanos / 1e6,
+                    calls == 0 ? 0 : totalNanos / 1e6 / calls, stats.maxNanos.get() / 1e6, stats.rows.sum()));
+        });
+
+        result.sort(Comparator.comparingDouble(SqlShapeStatsDto::getTotalMs).reversed());
+        return result;
+    }
+
+    //сбросить статистику
+    public void reset() {
+        shapesBySql.clear();
+        shapes.clear();
+    }
+
+    private ShapeStats statsOf(String sql) {
+        ShapeStats stats = shapesBySql.get(sql);
+
+        if (stats == null) {
+            String shape = normalize(sql);
+            stats = shapes.size() < maxShapes || shapes.containsKey(shape)
+                    ? shapes.computeIfAbsent(shape, key -> new ShapeStats())
+                    : shapes.computeIfAbsent(OTHER_SHAPE, key -> new ShapeStats());
+
+            if (shapesBySql.size() < maxShapes) {
+                shapesBySql.putIfAbsent(sql, stats);
+            }
+        }
+
+        return stats;
+    }
+
+    //заменить строковые и числовые литералы на ?, свернуть пробелы и списки IN, комментарии заменить пробелом
+    static String normalize(String sql) {
+        StringBuilder shape = new StringBuilder(sql.length());
+        boolean space = false;
+
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+
+            if (c == '\'') {
+                i = skipStringLiteral(sql, i);
+                shape.append('?');
+                space = false;
+            } else if (isCommentStart(sql, i)) {
+                i = skipComment(sql, i);
+                if (!space && shape.length() > 0) {
+                    shape.append(' ');
+                }
+                space = true;
+            } else if (Character.isDigit(c) && !isIdentifierPart(shape)) {
+                while (i + 1 < sql.length() && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+                    i++;
+                }
+                shape.append('?');
+                space = false;
+            } else if (Character.isWhitespace(c)) {
+                if (!space && shape.length() > 0) {
+                    shape.append(' ');
+                }
+                space = true;
+            } else {
+                shape.append(c);
+                space = false;
+            }
+        }
+
+        return IN_LIST.matcher(shape.toString().trim()).replaceAll("(?...)");
+    }
+
+    //количество параметров ? вне строковых литералов и комментариев
+    static int countBindParameters(String sql) {
+        int count = 0;
+
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                i = skipStringLiteral(sql, i);
+            } else if (isCommentStart(sql, i)) {
+                i = skipComment(sql, i);
+            } else if (c == '?') {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    //индекс закрывающей кавычки литерала, начинающегося в start ('' внутри литерала - экранированная кавычка)
+    private static int skipStringLiteral(String sql, int start) {
+        int i = start + 1;
+
+        while (i < sql.length()) {
+            if (sql.charAt(i) == '\'') {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                    i += 2;
+                    continue;
+                }
+                return i;
+            }
+            i++;
+        }
+
+        return sql.length() - 1;
+    }
+
+    //комментарий до конца строки (-- ...) или блочный (/* ... */)
+    private static boolean isCommentStart(String sql, int i) {
+        if (i + 1 >= sql.length()) {
+            return false;
+        }
+        char c = sql.charAt(i);
+        char next = sql.charAt(i + 1);
+        return c == '-' && next == '-' || c == '/' && next == '*';
+    }
+
+    //индекс последнего символа комментария, начинающегося в start
+    private static int skipComment(String sql, int start) {
+        int end = sql.charAt(start) == '-' ? sql.indexOf('\n', start + 2) : sql.indexOf("*/", start + 2);
+
+        if (end < 0) {
+            return sql.length() - 1;
+        }
+        return sql.charAt(start) == '-' ? end : end + 1;
+    }
+
+    //цифра внутри идентификатора (q1_0, quote_id_seq2) литералом не считается
+    private static boolean isIdentifierPart(StringBuilder shape) {
+        if (shape.length() == 0) {
+            return false;
+        }
+        char previous = shape.charAt(shape.length() - 1);
+        return Character.isLetterOrDigit(previous) || previous == '_';
+    }
+
+    //счетчики одной формы запроса
+    static final class ShapeStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder rows = new LongAdder();
+
+        void addRow() {
+            rows.increment();
+        }
+    }
+}
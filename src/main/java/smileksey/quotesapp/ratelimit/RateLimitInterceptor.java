@@ -0,0 +1,102 @@
+package smileksey.quotesapp.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//ограничение частоты изменяющих запросов к /quotes по клиентам (IP-адрес)
+//голоса (upvote, downvote, пакет голосов) и остальные изменения цитат расходуют разные запасы запросов;
+//запрос сверх лимита получает 429 с Retry-After и не доходит до контроллера и БД
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final byte[] TOO_MANY_REQUESTS_BODY = "{\"message\":\"Too many requests\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final RateLimiter votes;
+    private final RateLimiter writes;
+    private final boolean trustForwardedFor;
+    private final long cleanupIntervalMs;
+    private final Counter votesRejected;
+    private final Counter writesRejected;
+
+    private ScheduledExecutorService cleanup;
+
+    public RateLimitInterceptor(RateLimiter votes, RateLimiter writes, boolean trustForwardedFor, long cleanupIntervalMs,
+                                MeterRegistry registry) {
+        this.votes = votes;
+        this.writes = writes;
+        this.trustForwardedFor = trustForwardedFor;
+        this.cleanupIntervalMs = cleanupIntervalMs;
+        this.votesRejected = Counter.builder("quotes.ratelimit.rejected").tag("budget", "votes").register(registry);
+        this.writesRejected = Counter.builder("quotes.ratelimit.rejected").tag("budget", "writes").register(registry);
+        Gauge.builder("quotes.ratelimit.clients", votes, RateLimiter::size).tag("budget", "votes").register(registry);
+        Gauge.builder("quotes.ratelimit.clients", writes, RateLimiter::size).tag("budget", "writes").register(registry);
+    }
+
+    //периодически удалять клиентов с полным запасом запросов, чтобы память не росла с количеством адресов
+    public void start() {
+        cleanup = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleanup.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            votes.evictIdle(now);
+            writes.evictIdle(now);
+        }, cleanupIntervalMs, cleanupIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        cleanup.shutdownNow();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        String method = request.getMethod();
+        if (method.equals("GET") || method.equals("HEAD") || method.equals("OPTIONS")) {
+            return true;
+        }
+
+        boolean vote = isVote(request.getRequestURI());
+        long waitNanos = (vote ? votes : writes).tryAcquire(clientOf(request), System.nanoTime());
+        if (waitNanos == 0) {
+            return true;
+        }
+
+        (vote ? votesRejected : writesRejected).increment();
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (waitNanos + 999_999_999) / 1_000_000_000)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getOutputStream().write(TOO_MANY_REQUESTS_BODY);
+        return false;
+    }
+
+    private static boolean isVote(String uri) {
+        return uri.endsWith("/upvote") || uri.endsWith("/downvote") || uri.endsWith("/quotes/votes");
+    }
+
+    //адрес клиента; за прокси - первый адрес из X-Forwarded-For (только если прокси ему доверяют)
+    private String clientOf(HttpServletRequest request) {
+        if (trustForwardedFor) {
+            String forwardedFor = request.getHeader("X-Forwarded-For");
+            if (forwardedFor != null && !forwardedFor.isEmpty()) {
+                int comma = forwardedFor.indexOf(',');
+                return (comma < 0 ? forwardedFor : forwardedFor.substring(0, comma)).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,65 @@
+package smileksey.quotesapp.ratelimit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//ограничение частоты запросов по клиентам (token bucket в форме GCRA)
+//состояние клиента - одно число: теоретическое время следующего запроса (TAT); запрос разрешается, если TAT
+//опережает текущее время не больше чем на burst интервалов, и сдвигает TAT на один интервал через CAS, без блокировок
+//клиент с полным запасом запросов (TAT в прошлом) ничем не отличается от нового, поэтому такие записи удаляются
+public class RateLimiter {
+
+    //TAT нового клиента: запас запросов полный
+    private static final long FULL = Long.MIN_VALUE;
+
+    //интервал между запросами при постоянной частоте
+    private final long intervalNanos;
+    //насколько TAT может опережать текущее время: burst интервалов
+    private final long toleranceNanos;
+
+    private final Map<String, AtomicLong> clients = new ConcurrentHashMap<>();
+
+    public RateLimiter(double perSecond, int burst) {
+        if (perSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+        this.toleranceNanos = intervalNanos * burst;
+    }
+
+    //учесть запрос клиента в момент now (System.nanoTime())
+    //возвращает 0, если запрос разрешен, иначе - через сколько наносекунд клиенту можно повторить запрос
+    public long tryAcquire(String client, long now) {
+        AtomicLong tat = clients.get(client);
+        if (tat == null) {
+            tat = clients.computeIfAbsent(client, key -> new AtomicLong(FULL));
+        }
+
+        while (true) {
+            long current = tat.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long allowedAt = next - toleranceNanos;
+
+            //отклоненный запрос состояние не меняет
+            if (allowedAt > now) {
+                return allowedAt - now;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    //удалить клиентов с полным запасом запросов
+    //запрос, который успел получить удаляемую запись, учитывается в ней и теряется - клиент получит один лишний запрос
+    public void evictIdle(long now) {
+        clients.values().removeIf(tat -> tat.get() <= now);
+    }
+
+    //количество клиентов, для которых хранится состояние
+    public int size() {
+        return clients.size();
+    }
+}
@@ -0,0 +1,83 @@
+package smileksey.quotesapp.repositories;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.Arrays;
+
+//голоса пользователей за цитаты (таблица quote_vote)
+@Repository
+public class QuoteVotersRepository {
+
+    private static final String FIND_VOTERS_SQL = "select user_id, direction, effect from quote_vote where quote_id = ? order by user_id";
+    //голос меняется, только если он не изменился с момента, когда его прочитали
+    private static final String CHANGE_VOTE_SQL = "update quote_vote set direction = ?, effect = ? " +
+            "where quote_id = ? and user_id = ? and direction = ? and effect = ?";
+    private static final String SET_EFFECT_SQL = "update quote_vote set effect = ? where quote_id = ? and user_id = ?";
+    //строка добавляется, только если пользователь еще не голосовал за цитату
+    private static final String INSERT_SQL = "insert into quote_vote (quote_id, user_id, direction, effect) " +
+            "select ?, ?, ?, ? where not exists (select 1 from quote_vote where quote_id = ? and user_id = ?)";
+
+    //наибольший id пользователя, для которого userId * 4 + 3 помещается в int
+    public static final int MAX_USER_ID = Integer.MAX_VALUE >> 2;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public QuoteVotersRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    //голос пользователя в виде одного числа userId * 4 + состояние, id пользователя меньше 2^29
+    //состояние: 3 - голос "за", 0, 1 и 2 - голос "против", который изменил рейтинг на -1, 0 и 1
+    //больший id переполнил бы int и испортил порядок массива голосов, поэтому такой голос не принимается
+    public static int encode(int userId, int direction, int effect) {
+        if (userId < 0 || userId > MAX_USER_ID) {
+            throw new IllegalArgumentException("User id " + userId + " is out of range for votes, maximum is " + MAX_USER_ID);
+        }
+        return userId * 4 + (direction > 0 ? 3 : effect + 1);
+    }
+
+    //все голоса за цитату в виде отсортированного массива encode(userId, direction, effect)
+    public int[] findVoters(int quoteId) {
+        IntArrayBuilder voters = new IntArrayBuilder();
+
+        RowCallbackHandler collect = rs -> voters.add(encode(rs.getInt(1), rs.getInt(2), rs.getInt(3)));
+        jdbcTemplate.query(FIND_VOTERS_SQL, collect, quoteId);
+
+        return voters.toArray();
+    }
+
+    //заменить голос (direction, effect) на новый, возвращает 0, если в БД уже другой голос
+    public int changeVote(int quoteId, int userId, int direction, int effect, int previousDirection, int previousEffect) {
+        return jdbcTemplate.update(CHANGE_VOTE_SQL, direction, effect, quoteId, userId, previousDirection, previousEffect);
+    }
+
+    //записать, на сколько голоса пользователя изменили рейтинг
+    public int setEffect(int quoteId, int userId, int effect) {
+        return jdbcTemplate.update(SET_EFFECT_SQL, effect, quoteId, userId);
+    }
+
+    //добавить голос, возвращает 0, если пользователь уже голосовал за цитату
+    public int insert(int quoteId, int userId, int direction, int effect) {
+        return jdbcTemplate.update(INSERT_SQL, quoteId, userId, direction, effect, quoteId, userId);
+    }
+
+    private static final class IntArrayBuilder {
+        private int[] values = new int[16];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package smileksey.quotesapp.repositories;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//пакетное изменение рейтинга цитат через JDBC batch
+@Repository
+public class QuoteVotesBatchRepository {
+
+    private static final String LOCK_VOTES_SQL = "select id, votes from quote where id in (%s) for update";
+    //изменение уже ограничено нижней границей (рейтинг не может стать меньше нуля), строки заблокированы
+    private static final String APPLY_VOTES_SQL = "update quote set votes = votes + ? where id = ?";
+    //количество id в одном запросе блокировки
+    private static final int LOCK_CHUNK_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public QuoteVotesBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    //изменить рейтинг нескольких цитат и узнать, насколько он изменился на самом деле (с учетом нижней границы)
+    //строки блокируются SELECT ... FOR UPDATE в порядке возрастания id, затем меняются одним JDBC batch;
+    //вызывается в транзакции, каждый элемент списка - пара {id, изменение рейтинга}, id в списке не повторяются
+    //возвращает фактическое изменение рейтинга найденных цитат: id -> изменение (отсутствующих цитат в ответе нет)
+    public Map<Integer, Integer> applyVotes(List<int[]> deltas) {
+
+        if (deltas.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<int[]> sorted = new ArrayList<>(deltas);
+        sorted.sort(Comparator.comparingInt(delta -> delta[0]));
+
+        Map<Integer, Integer> votes = new HashMap<>();
+        for (int from = 0; from < sorted.size(); from += LOCK_CHUNK_SIZE) {
+            List<int[]> chunk = sorted.subList(from, Math.min(from + LOCK_CHUNK_SIZE, sorted.size()));
+            String sql = String.format(LOCK_VOTES_SQL, String.join(",", Collections.nCopies(chunk.size(), "?")));
+
+            jdbcTemplate.query(sql, rs -> {
+                votes.put(rs.getInt(1), rs.getInt(2));
+            }, chunk.stream().map(delta -> delta[0]).toArray());
+        }
+
+        Map<Integer, Integer> applied = new HashMap<>();
+        List<int[]> updates = new ArrayList<>();
+
+        for (int[] delta : sorted) {
+            Integer current = votes.get(delta[0]);
+            if (current != null) {
+                int change = Math.max(0, current + delta[1]) - current;
+                applied.put(delta[0], change);
+                if (change != 0) {
+                    updates.add(new int[]{delta[0], change});
+                }
+            }
+        }
+
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(APPLY_VOTES_SQL, updates, updates.size(), (ps, update) -> {
+                ps.setInt(1, update[1]);
+                ps.setInt(2, update[0]);
+            });
+        }
+
+        return applied;
+    }
+}
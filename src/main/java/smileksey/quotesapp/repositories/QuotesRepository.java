@@ -1,14 +1,81 @@
 package smileksey.quotesapp.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.dto.QuoteVotes;
 import smileksey.quotesapp.models.Quote;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface QuotesRepository extends JpaRepository<Quote, Integer> {
-    List<Quote> findTop10ByOrderByVotesDesc();
-    List<Quote> findTop10ByOrderByVotesAsc();
+
+    //выборка цитат сразу в QuoteDto (вместе с данными автора)
+    String SELECT_QUOTE_DTO = "select new smileksey.quotesapp.dto.QuoteDto(q.id, q.content, u.name, u.email, q.votes, " +
+            "q.dateOfCreation, q.dateOfUpdate) from Quote q join q.user u ";
+
+    //получить цитату вместе с автором одним запросом (для изменения цитаты)
+    @Query("select q from Quote q join fetch q.user where q.id = :id")
+    Optional<Quote> findWithUserById(@Param("id") int id);
+
+    //получить цитату по id в виде QuoteDto
+    @Query(SELECT_QUOTE_DTO + "where q.id = :id")
+    Optional<QuoteDto> findDtoById(@Param("id") int id);
+
+    //получить id всех цитат
+    @Query("select q.id from Quote q")
+    Stream<Integer> streamAllIds();
+
+    //получить все цитаты в виде QuoteDto (для выгрузки и загрузки рейтинга в память)
+    //результат читается курсором порциями по 1000 строк, сущности не создаются и не попадают в persistence context
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(SELECT_QUOTE_DTO)
+    Stream<QuoteDto> streamAllAsDto();
+
+    //постраничный вывод методом поиска по ключу (keyset pagination): вместо OFFSET условие продолжает выборку
+    //с последней цитаты предыдущей страницы, поэтому любая страница читается по индексу так же быстро, как первая
+    //размер страницы задается через pageable с номером страницы 0
+
+    //страница по возрастанию id, начиная с цитаты после afterId
+    @Query(SELECT_QUOTE_DTO + "where q.id > :afterId order by q.id")
+    List<QuoteDto> findPageOrderById(@Param("afterId") int afterId, Pageable pageable);
+
+    //страница по убыванию рейтинга, начиная с цитаты после (votes, afterId)
+    //условие q.votes <= :votes позволяет БД начать просмотр индекса (votes desc, id) сразу с нужной позиции
+    @Query(SELECT_QUOTE_DTO + "where q.votes <= :votes and (q.votes < :votes or q.id > :afterId) order by q.votes desc, q.id")
+    List<QuoteDto> findPageOrderByVotes(@Param("votes") int votes, @Param("afterId") int afterId, Pageable pageable);
+
+    //страница по убыванию даты создания, начиная с цитаты после (created, beforeId)
+    //цитаты без даты идут в конце по убыванию id, начиная с цитаты перед undatedBeforeId
+    @Query(SELECT_QUOTE_DTO + "where (q.dateOfCreation <= :created and (q.dateOfCreation < :created or q.id < :beforeId)) " +
+            "or (q.dateOfCreation is null and q.id < :undatedBeforeId) " +
+            "order by q.dateOfCreation desc nulls last, q.id desc")
+    List<QuoteDto> findPageOrderByCreated(@Param("created") Date created, @Param("beforeId") int beforeId,
+                                          @Param("undatedBeforeId") int undatedBeforeId, Pageable pageable);
+
+    //получить id и рейтинг всех цитат
+    @Query("select q.id as id, q.votes as votes from Quote q")
+    Stream<QuoteVotes> streamAllVotes();
+
+    //атомарно увеличить рейтинг цитаты на 1, возвращает количество измененных строк
+    @Modifying
+    @Query("update Quote q set q.votes = q.votes + 1 where q.id = :id")
+    int incrementVotes(@Param("id") int id);
+
+    //атомарно уменьшить рейтинг цитаты на 1, если он больше нуля, возвращает количество измененных строк
+    @Modifying
+    @Query("update Quote q set q.votes = q.votes - 1 where q.id = :id and q.votes > 0")
+    int decrementVotes(@Param("id") int id);
 
 }
@@ -1,12 +1,29 @@
 package smileksey.quotesapp.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import smileksey.quotesapp.models.User;
 
+import java.util.Date;
 import java.util.Optional;
 
 @Repository
 public interface UsersRepository extends JpaRepository<User, Integer> {
     Optional<User> findByEmail(String email);
+
+    //сохранить копию пользователя с уже известным id (в другом шарде), если копии с таким id еще нет
+    @Modifying
+    @Query(value = "insert into service_user (id, name, email, password, date_of_creation) " +
+            "select :id, :name, :email, :password, :dateOfCreation " +
+            "where not exists (select 1 from service_user where id = :id)", nativeQuery = true)
+    int insertCopy(@Param("id") int id, @Param("name") String name, @Param("email") String email,
+                   @Param("password") String password, @Param("dateOfCreation") Date dateOfCreation);
+
+    //удалить копию пользователя с тем же email, но другим id - она осталась от регистрации, которая не завершилась
+    @Modifying
+    @Query(value = "delete from service_user where email = :email and id <> :id", nativeQuery = true)
+    int deleteStaleCopy(@Param("id") int id, @Param("email") String email);
 }
@@ -0,0 +1,27 @@
+package smileksey.quotesapp.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//отметки удаления цитат для индексов в памяти, которые обновляются по событиям после коммита
+//события обрабатываются в потоках закоммитивших их транзакций и могут прийти не в порядке коммитов: сохранение цитаты,
+//закоммиченное до ее удаления, может прийти после удаления и вернуть цитату в индекс
+//индекс отмечает id до удаления цитаты у себя и не добавляет отмеченные id; id не используются повторно
+//(см. ShardedQuoteIdGenerator), поэтому отметка хранится до остановки приложения - по одной на удаленную цитату
+@Component
+public class DeletedQuotes {
+
+    private final Set<Integer> ids = ConcurrentHashMap.newKeySet();
+
+    //отметить цитату удаленной
+    public void add(int id) {
+        ids.add(id);
+    }
+
+    //удалена ли цитата
+    public boolean contains(int id) {
+        return ids.contains(id);
+    }
+}
@@ -0,0 +1,46 @@
+package smileksey.quotesapp.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//голоса за цитаты, которых еще нет в индексе: событие голосования может прийти раньше события сохранения цитаты,
+//если транзакция голосования закоммичена позже, а ее обработчик закончил раньше
+//индекс откладывает такие голоса и применяет их, когда цитата появится; для удаленных цитат голоса не откладываются
+final class EarlyVotes {
+
+    //id -> отложенное изменение рейтинга в БД и незаписанных голосов
+    private final Map<Integer, Votes> votes = new ConcurrentHashMap<>();
+
+    //отложить голоса за цитату
+    void add(int id, int storedDelta, int pendingDelta) {
+        votes.merge(id, new Votes(storedDelta, pendingDelta),
+                (old, added) -> new Votes(old.storedDelta + added.storedDelta, old.pendingDelta + added.pendingDelta));
+    }
+
+    //забрать отложенные голоса за цитату или null, если их нет
+    Votes take(int id) {
+        return votes.remove(id);
+    }
+
+    void clear() {
+        votes.clear();
+    }
+
+    static final class Votes {
+        private final int storedDelta;
+        private final int pendingDelta;
+
+        private Votes(int storedDelta, int pendingDelta) {
+            this.storedDelta = storedDelta;
+            this.pendingDelta = pendingDelta;
+        }
+
+        int getStoredDelta() {
+            return storedDelta;
+        }
+
+        int getPendingDelta() {
+            return pendingDelta;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package smileksey.quotesapp.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import smileksey.quotesapp.dto.QuoteDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.zip.GZIPOutputStream;
+
+//готовые тела ответов /quotes/top10 и /quotes/worst10: json и его gzip-версия хранятся для текущей версии списка
+//и отдаются как есть, без создания QuoteDto и сериализации на каждый запрос
+//версия списка (QuotesLeaderboard.getTopVersion) не меняется от голосов за цитаты вне списка, поэтому ответ строится
+//заново, только когда изменились записи цитат самого списка; если и тогда json не изменился, сохраняется прежний ответ
+//с прежним ETag и уже сжатой версией; gzip рассчитывается при первом запросе с Accept-Encoding: gzip
+//ETag - хеш самого json, а не версия списка: версия считается заново после перезапуска и различается на разных
+//экземплярах приложения, а одинаковый json везде дает одинаковый ETag
+@Component
+public class LeaderboardResponses {
+
+    private static final int SIZE = QuotesLeaderboard.HEAD_SIZE;
+
+    private final QuotesLeaderboard leaderboard;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicReference<Encoded> top = new AtomicReference<>();
+    private final AtomicReference<Encoded> worst = new AtomicReference<>();
+
+    @Autowired
+    public LeaderboardResponses(QuotesLeaderboard leaderboard, ObjectMapper objectMapper) {
+        this.leaderboard = leaderboard;
+        this.objectMapper = objectMapper;
+    }
+
+    //ответ со списком 10 лучших цитат
+    public Encoded top10() {
+        return get(top, QuotesLeaderboard::getTopVersion, board -> board.top(SIZE));
+    }
+
+    //ответ со списком 10 худших цитат
+    public Encoded worst10() {
+        return get(worst, QuotesLeaderboard::getWorstVersion, board -> board.worst(SIZE));
+    }
+
+    private Encoded get(AtomicReference<Encoded> cached, ToLongFunction<QuotesLeaderboard> listVersion,
+                        Function<QuotesLeaderboard, List<QuoteDto>> query) {
+        //версия читается до получения списка: тогда список не старее версии
+        long version = listVersion.applyAsLong(leaderboard);
+        Encoded current = cached.get();
+        if (current != null && current.checkedVersion == version) {
+            return current;
+        }
+
+        Encoded updated = encode(version, query.apply(leaderboard), current);
+
+        //при одновременном пересчете сохраняется ответ с большей версией
+        while (current == null || current.checkedVersion < version) {
+            if (cached.compareAndSet(current, updated)) {
+                break;
+            }
+            current = cached.get();
+        }
+
+        return updated;
+    }
+
+    private Encoded encode(long checkedVersion, List<QuoteDto> quotes, Encoded previous) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(quotes);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (previous != null && Arrays.equals(previous.json, json)) {
+            return new Encoded(checkedVersion, previous.etag, previous.json, previous.gzip);
+        }
+        return new Encoded(checkedVersion, etag(json), json, null);
+    }
+
+    //ETag json-ответа: первые 16 байт SHA-256 в hex; рассчитывается один раз для каждого нового json
+    private static String etag(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //сериализованный список; массивы общие для всех запросов и не должны изменяться
+    public static final class Encoded {
+        //версия списка, для которой ответ проверен
+        private final long checkedVersion;
+        //хеш json без кавычек, общий для обычного и сжатого ответа
+        private final String etag;
+        private final byte[] json;
+        //null, пока сжатая версия не понадобилась
+        private volatile byte[] gzip;
+
+        private Encoded(long checkedVersion, String etag, byte[] json, byte[] gzip) {
+            this.checkedVersion = checkedVersion;
+            this.etag = etag;
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        //сжатый json; при одновременных первых запросах может быть сжат несколько раз, результат одинаковый
+        public byte[] getGzip() {
+            byte[] compressed = gzip;
+            if (compressed == null) {
+                compressed = compress(json);
+                gzip = compressed;
+            }
+            return compressed;
+        }
+
+        private static byte[] compress(byte[] bytes) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 32);
+            try (GZIPOutputStream gzipStream = new GZIPOutputStream(out)) {
+                gzipStream.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package smileksey.quotesapp.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import smileksey.quotesapp.dto.QuoteDto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+//рассылка изменений списков лучших и худших цитат по Server-Sent Events
+//раз в quotes.leaderboard.stream.interval проверяется версия рейтинга; новый снимок рассылается, только если изменился
+//состав или порядок цитат в списке, поэтому частые голоса дают не больше одной рассылки за интервал
+//соединения обслуживаются асинхронно и не занимают поток, пока ждут изменений; запись неблокирующая (SseConnection),
+//поэтому клиент, который перестал читать, не задерживает рассылку остальным; подписчику, который еще не принял
+//предыдущее сообщение, отправляется только последний снимок, а если соединение не принимает данные дольше
+//quotes.leaderboard.stream.slow-consumer-timeout, подписчик отключается
+@Component
+public class LeaderboardStream {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardStream.class);
+    private static final int SIZE = 10;
+    //пустой комментарий SSE
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    //список, на изменения которого можно подписаться
+    public enum Board {
+        TOP10("top10", leaderboard -> leaderboard.top(SIZE)),
+        WORST10("worst10", leaderboard -> leaderboard.worst(SIZE));
+
+        private final String eventName;
+        private final Function<QuotesLeaderboard, List<QuoteDto>> query;
+
+        Board(String eventName, Function<QuotesLeaderboard, List<QuoteDto>> query) {
+            this.eventName = eventName;
+            this.query = query;
+        }
+    }
+
+    private final QuotesLeaderboard leaderboard;
+    private final ObjectMapper objectMapper;
+    private final long intervalMs;
+    private final long heartbeatMs;
+    private final long timeoutMs;
+    private final long slowConsumerNanos;
+
+    private final Map<Board, Channel> channels = new EnumMap<>(Board.class);
+    private long checkedVersion = -1;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public LeaderboardStream(QuotesLeaderboard leaderboard, ObjectMapper objectMapper,
+                             @Value("${quotes.leaderboard.stream.interval:500ms}") Duration interval,
+                             @Value("${quotes.leaderboard.stream.heartbeat:30s}") Duration heartbeat,
+                             @Value("${quotes.leaderboard.stream.timeout:30m}") Duration timeout,
+                             @Value("${quotes.leaderboard.stream.slow-consumer-timeout:5s}") Duration slowConsumerTimeout) {
+        this.leaderboard = leaderboard;
+        this.objectMapper = objectMapper;
+        this.intervalMs = interval.toMillis();
+        this.heartbeatMs = heartbeat.toMillis();
+        this.timeoutMs = timeout.toMillis();
+        this.slowConsumerNanos = slowConsumerTimeout.toNanos();
+
+        for (Board board : Board.values()) {
+            channels.put(board, new Channel(board));
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        refresh();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "leaderboard-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    //при остановке приложения закрыть все подписки
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+        channels.values().forEach(channel -> channel.subscribers.forEach(Subscriber::close));
+    }
+
+    //подписаться на изменения списка: запрос переходит в асинхронный режим, ответ - поток событий
+    public void subscribe(Board board, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        subscribe(board, new ServletSseConnection(request, response, timeoutMs));
+    }
+
+    //первым сообщением подписчик получает текущий список
+    void subscribe(Board board, SseConnection connection) {
+        Channel channel = channels.get(board);
+        Subscriber subscriber = new Subscriber(channel, connection);
+
+        //запись становится неблокирующей после start(), поэтому первое сообщение ставится в очередь после него
+        connection.start(subscriber::drain, subscriber::closed);
+        Snapshot initial = channel.snapshot;
+        subscriber.push(initial.message, true);
+        channel.subscribers.add(subscriber);
+
+        //снимок мог обновиться до добавления подписчика в рассылку, а соединение - закрыться
+        Snapshot latest = channel.snapshot;
+        if (latest != initial) {
+            subscriber.push(latest.message, true);
+        }
+        if (subscriber.closed.get()) {
+            subscriber.remove();
+        }
+    }
+
+    //количество подписчиков списка
+    public int subscribers(Board board) {
+        return channels.get(board).subscribers.size();
+    }
+
+    //проверить версию рейтинга и разослать изменившиеся списки
+    //снимок для новых подписчиков обновляется при любом изменении рейтинга, чтобы их первое сообщение
+    //содержало текущие голоса и тексты, а уже подписанным он рассылается, только если изменился состав или порядок
+    synchronized void refresh() {
+        long version = leaderboard.getVersion();
+        if (version == checkedVersion) {
+            return;
+        }
+        checkedVersion = version;
+
+        for (Channel channel : channels.values()) {
+            List<QuoteDto> quotes = channel.board.query.apply(leaderboard);
+            List<Integer> ids = quotes.stream().map(QuoteDto::getId).toList();
+
+            //список сериализуется один раз для всех подписчиков
+            Snapshot snapshot = new Snapshot(channel.board, version, ids, toJson(quotes));
+            Snapshot previous = channel.snapshot;
+            channel.snapshot = snapshot;
+
+            if (previous == null || !ids.equals(previous.ids)) {
+                channel.subscribers.forEach(subscriber -> subscriber.push(snapshot.message, true));
+            }
+        }
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.error("Failed to publish leaderboard changes", e);
+        }
+    }
+
+    //пустой комментарий раз в quotes.leaderboard.stream.heartbeat: соединение не закрывается прокси по простою,
+    //отключившиеся клиенты обнаруживаются без ожидания изменений рейтинга, а медленные - отключаются
+    private void heartbeat() {
+        channels.values().forEach(channel -> channel.subscribers.forEach(subscriber -> subscriber.push(HEARTBEAT, false)));
+    }
+
+    private String toJson(List<QuoteDto> quotes) {
+        try {
+            return objectMapper.writeValueAsString(quotes);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //подписчики одного списка и последний снимок
+    private static final class Channel {
+        private final Board board;
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        private volatile Snapshot snapshot;
+
+        private Channel(Board board) {
+            this.board = board;
+        }
+    }
+
+    //список цитат, уже записанный в виде события SSE; одни и те же байты отправляются всем подписчикам
+    private static final class Snapshot {
+        private final List<Integer> ids;
+        private final byte[] message;
+
+        private Snapshot(Board board, long version, List<Integer> ids, String json) {
+            this.ids = ids;
+            this.message = ("event:" + board.eventName + "\nid:" + version + "\ndata:" + json + "\n\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private final class Subscriber {
+        private final Channel channel;
+        private final SseConnection connection;
+        //сообщение, которое еще не записано; новый снимок заменяет предыдущий
+        private final AtomicReference<byte[]> pending = new AtomicReference<>();
+        //запись выполняет один поток: тот, кто увеличил счетчик с нуля, пишет, пока счетчик не обнулится;
+        //остальные только увеличивают счетчик и не ждут
+        private final AtomicInteger drainRequests = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        //с какого момента соединение не принимает данные, 0 - принимает
+        private volatile long stalledSinceNanos;
+
+        private Subscriber(Channel channel, SseConnection connection) {
+            this.channel = channel;
+            this.connection = connection;
+        }
+
+        //поставить сообщение в очередь подписчика; replace = false - только если очередь пуста (heartbeat)
+        private void push(byte[] message, boolean replace) {
+            if (replace) {
+                pending.set(message);
+            } else {
+                pending.compareAndSet(null, message);
+            }
+
+            long stalledSince = stalledSinceNanos;
+            if (stalledSince != 0 && System.nanoTime() - stalledSince > slowConsumerNanos) {
+                //соединение не принимает данные - отключить
+                close();
+                return;
+            }
+
+            drain();
+        }
+
+        //записать накопленное сообщение, пока соединение готово принимать данные; вызывается и контейнером,
+        //когда соединение снова готово
+        private void drain() {
+            if (drainRequests.getAndIncrement() != 0) {
+                return;
+            }
+
+            int requests = 1;
+            do {
+                try {
+                    writePending();
+                } catch (IOException | IllegalStateException e) {
+                    close();
+                }
+                requests = drainRequests.addAndGet(-requests);
+            } while (requests != 0);
+        }
+
+        private void writePending() throws IOException {
+            while (!closed.get()) {
+                if (!connection.isReady()) {
+                    if (stalledSinceNanos == 0) {
+                        stalledSinceNanos = System.nanoTime();
+                    }
+                    return;
+                }
+                stalledSinceNanos = 0;
+
+                byte[] message = pending.getAndSet(null);
+                if (message == null) {
+                    return;
+                }
+                connection.write(message);
+            }
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                remove();
+                connection.close();
+            }
+        }
+
+        //соединение закрыто клиентом или контейнером
+        private void closed() {
+            closed.set(true);
+            remove();
+        }
+
+        private void remove() {
+            channel.subscribers.remove(this);
+        }
+    }
+}
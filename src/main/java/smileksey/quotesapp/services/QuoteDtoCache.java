@@ -0,0 +1,134 @@
+package smileksey.quotesapp.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import smileksey.quotesapp.datasource.ReplicaRoutingDataSource;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.events.QuoteSavedEvent;
+import smileksey.quotesapp.events.QuoteVotedEvent;
+import smileksey.quotesapp.events.QuoteVotesFlushedEvent;
+
+import java.util.Optional;
+import java.util.function.IntFunction;
+
+//кэш цитат для чтения по id (read-through)
+//в кэше хранится состояние цитаты в БД, незаписанные голоса VoteAggregator накладываются поверх при каждом чтении
+//запись удаляется из кэша после коммита любого изменения цитаты; загрузка и удаление одной записи в Caffeine
+//атомарны, поэтому значение, прочитанное из БД до коммита, не может остаться в кэше после удаления
+//цитата загружается в кэш из основной БД, а не из реплики: у записей кэша нет срока жизни, и значение из отстающей
+//реплики оставалось бы в кэше до следующего изменения цитаты
+@Component
+public class QuoteDtoCache {
+
+    //приблизительный размер QuoteDto без строк: заголовок объекта, поля, две даты и запись в таблице кэша
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private final boolean enabled;
+    //ограничение по оценке занимаемой памяти, а не по количеству записей - длина цитат не ограничена
+    private final Cache<Integer, QuoteDto> quotesById;
+    //транзакция загрузки цитаты; без кэша чтение может идти в реплику, как и остальные чтения
+    private final TransactionTemplate loadTransaction;
+
+    @Autowired
+    public QuoteDtoCache(PlatformTransactionManager transactionManager,
+                         @Value("${quotes.cache.enabled:true}") boolean enabled,
+                         @Value("${quotes.cache.max-memory:32MB}") DataSize maxMemory) {
+        this.enabled = enabled;
+        this.loadTransaction = new TransactionTemplate(transactionManager);
+        this.loadTransaction.setReadOnly(true);
+        if (enabled) {
+            this.loadTransaction.setName(ReplicaRoutingDataSource.PRIMARY_READ_TRANSACTION);
+        }
+        this.quotesById = Caffeine.newBuilder()
+                .maximumWeight(maxMemory.toBytes())
+                .weigher((Integer id, QuoteDto quoteDto) -> estimateSize(quoteDto))
+                .recordStats()
+                .build();
+    }
+
+    //получить цитату из кэша или загрузить ее через loader
+    //loader выполняется в отдельной транзакции, поэтому вызывать get нужно вне транзакции - иначе на время загрузки
+    //понадобится второе соединение с БД
+    //возвращается копия, поэтому вызывающий код может ее менять (например, добавлять незаписанные голоса)
+    public Optional<QuoteDto> get(int id, IntFunction<Optional<QuoteDto>> loader) {
+        if (!enabled) {
+            return load(id, loader);
+        }
+
+        //отсутствующие цитаты не кэшируются - loader возвращает null, и Caffeine ничего не сохраняет
+        QuoteDto cachedQuote = quotesById.get(id, key -> load(key, loader).orElse(null));
+        return Optional.ofNullable(cachedQuote).map(QuoteDtoCache::copyOf);
+    }
+
+    //удалить цитату из кэша
+    public void invalidate(int id) {
+        quotesById.invalidate(id);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //статистика кэша цитат: попадания, промахи, вытеснения
+    public CacheStats getStats() {
+        return quotesById.stats();
+    }
+
+    //количество цитат в кэше
+    public long size() {
+        return quotesById.estimatedSize();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteSaved(QuoteSavedEvent event) {
+        invalidate(event.getQuote().getId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteDeleted(QuoteDeletedEvent event) {
+        invalidate(event.getId());
+    }
+
+    //голос, записанный в БД сразу (в том числе при переполненном VoteAggregator), делает запись устаревшей;
+    //незаписанные голоса рейтинг в БД не меняют - они накладываются при чтении
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteVoted(QuoteVotedEvent event) {
+        if (!event.isPending()) {
+            invalidate(event.getId());
+        }
+    }
+
+    //пакет голосов записан в БД - закэшированный рейтинг этих цитат устарел
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteVotesFlushed(QuoteVotesFlushedEvent event) {
+        quotesById.invalidateAll(event.getIds());
+    }
+
+    private Optional<QuoteDto> load(int id, IntFunction<Optional<QuoteDto>> loader) {
+        return loadTransaction.execute(status -> loader.apply(id));
+    }
+
+    private static int estimateSize(QuoteDto quoteDto) {
+        return ENTRY_OVERHEAD_BYTES + sizeOf(quoteDto.getContent()) + sizeOf(quoteDto.getUserName()) + sizeOf(quoteDto.getUserEmail());
+    }
+
+    //строки хранятся в Latin-1 или UTF-16, берется худший случай
+    private static int sizeOf(String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + 2 * value.length();
+    }
+
+    private static QuoteDto copyOf(QuoteDto quoteDto) {
+        return new QuoteDto(quoteDto.getId(), quoteDto.getContent(), quoteDto.getUserName(), quoteDto.getUserEmail(),
+                quoteDto.getVotes(), quoteDto.getDateOfCreation(), quoteDto.getDateOfUpdate());
+    }
+}
@@ -0,0 +1,339 @@
+package smileksey.quotesapp.services;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.events.QuoteSavedEvent;
+import smileksey.quotesapp.repositories.QuotesRepository;
+import smileksey.quotesapp.util.IntIntMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+//обратный индекс слов цитат для поиска без LIKE '%...%' по всей таблице
+//текст разбивается на слова (последовательности букв и цифр) в нижнем регистре; для каждого слова хранится
+//отсортированный массив int[] id цитат, для каждой цитаты - ссылки на списки ее слов, чтобы при изменении
+//и удалении цитаты не разбирать заново старый текст
+//индекс загружается из БД при старте и затем обновляется по событиям добавления/изменения/удаления цитат;
+//сохранение, пришедшее после удаления цитаты (события не в порядке коммитов), не возвращает ее в индекс (DeletedQuotes)
+@Component
+public class QuoteSearchIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final Posting[] NO_POSTINGS = new Posting[0];
+
+    //приблизительные размеры объектов для оценки занимаемой памяти (сжатые ссылки)
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    //объект Posting, строка без символов и запись HashMap
+    private static final int TERM_OVERHEAD_BYTES = 24 + 40 + 36;
+
+    private final QuotesRepository quotesRepository;
+    private final QuoteShards quoteShards;
+    private final DeletedQuotes deletedQuotes;
+
+    //поиск выполняется под блокировкой чтения, изменения - под эксклюзивной блокировкой
+    private final StampedLock lock = new StampedLock();
+    //слово -> список id цитат
+    private final Map<String, Posting> postings = new HashMap<>();
+    //списки слов цитат и id цитат в плотных массивах, занятые ячейки - [0, size)
+    private Posting[][] documents = new Posting[INITIAL_CAPACITY][];
+    private int[] documentIds = new int[INITIAL_CAPACITY];
+    //id -> номер ячейки цитаты плюс один, 0 - цитаты с таким id нет; память не зависит от наибольшего id
+    private final IntIntMap documentSlots = new IntIntMap(INITIAL_CAPACITY);
+    private int size;
+
+    @Autowired
+    public QuoteSearchIndex(QuotesRepository quotesRepository, QuoteShards quoteShards, DeletedQuotes deletedQuotes) {
+        this.quotesRepository = quotesRepository;
+        this.quoteShards = quoteShards;
+        this.deletedQuotes = deletedQuotes;
+    }
+
+    //загрузить тексты всех цитат из БД
+    @PostConstruct
+    public void reload() {
+        long stamp = lock.writeLock();
+        try {
+            postings.clear();
+            documents = new Posting[INITIAL_CAPACITY][];
+            documentIds = new int[INITIAL_CAPACITY];
+            documentSlots.clear();
+            size = 0;
+
+            //цитаты загружаются из всех шардов
+            quoteShards.loadFromEachShard(() -> {
+                try (Stream<QuoteDto> quotes = quotesRepository.streamAllAsDto()) {
+                    quotes.forEach(quoteDto -> putLocked(quoteDto.getId(), quoteDto.getContent()));
+                }
+            });
+
+            //после загрузки массивы списков обрезаются до фактического размера
+            postings.values().forEach(Posting::trim);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //разбить текст на уникальные слова в нижнем регистре
+    public static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return terms;
+        }
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+
+        return terms;
+    }
+
+    //id цитат, содержащих все слова (AND), по возрастанию
+    //списки пересекаются начиная с самого короткого, поэтому время зависит от самого редкого слова запроса
+    public int[] search(Set<String> terms) {
+        long stamp = lock.readLock();
+        try {
+            List<Posting> lists = new ArrayList<>(terms.size());
+
+            for (String term : terms) {
+                Posting posting = postings.get(term);
+                if (posting == null) {
+                    return new int[0];
+                }
+                lists.add(posting);
+            }
+
+            if (lists.isEmpty()) {
+                return new int[0];
+            }
+
+            lists.sort(Comparator.comparingInt(posting -> posting.size));
+            return intersect(lists);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //количество цитат в индексе
+    public int size() {
+        return size;
+    }
+
+    //количество разных слов в индексе
+    public int terms() {
+        long stamp = lock.readLock();
+        try {
+            return postings.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //приблизительный объем памяти, занятой индексом, в байтах
+    public long estimateMemory() {
+        long stamp = lock.readLock();
+        try {
+            long bytes = 2L * ARRAY_HEADER_BYTES + (long) (REFERENCE_BYTES + 4) * documents.length
+                    + ARRAY_HEADER_BYTES + 8L * documentSlots.capacity();
+
+            for (int i = 0; i < size; i++) {
+                if (documents[i] != NO_POSTINGS) {
+                    bytes += ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * documents[i].length;
+                }
+            }
+            for (Posting posting : postings.values()) {
+                bytes += TERM_OVERHEAD_BYTES + 2L * posting.term.length() + ARRAY_HEADER_BYTES + 4L * posting.ids.length;
+            }
+
+            return bytes;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //новая цитата добавляется в индекс, у измененной заменяются слова
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteSaved(QuoteSavedEvent event) {
+        int id = event.getQuote().getId();
+
+        long stamp = lock.writeLock();
+        try {
+            if (!deletedQuotes.contains(id)) {
+                putLocked(id, event.getQuote().getContent());
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteDeleted(QuoteDeletedEvent event) {
+        //отметка ставится до удаления: сохранение, которое придет позже, ее увидит
+        deletedQuotes.add(event.getId());
+        remove(event.getId());
+    }
+
+    //добавить цитату в индекс или заменить ее слова
+    public void put(int id, String content) {
+        long stamp = lock.writeLock();
+        try {
+            putLocked(id, content);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //удалить цитату из индекса
+    public void remove(int id) {
+        long stamp = lock.writeLock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void putLocked(int id, String content) {
+        removeLocked(id);
+
+        Set<String> terms = tokenize(content);
+        Posting[] document = terms.isEmpty() ? NO_POSTINGS : new Posting[terms.size()];
+
+        int i = 0;
+        for (String term : terms) {
+            Posting posting = postings.computeIfAbsent(term, Posting::new);
+            posting.add(id);
+            document[i++] = posting;
+        }
+
+        if (size == documents.length) {
+            documents = Arrays.copyOf(documents, documents.length + (documents.length >> 1));
+            documentIds = Arrays.copyOf(documentIds, documents.length);
+        }
+        documents[size] = document;
+        documentIds[size] = id;
+        documentSlots.put(id, size + 1);
+        size++;
+    }
+
+    //на место удаленной цитаты переносится последняя, чтобы массивы оставались плотными
+    private void removeLocked(int id) {
+        int slot = documentSlots.get(id) - 1;
+        if (slot < 0) {
+            return;
+        }
+
+        for (Posting posting : documents[slot]) {
+            posting.remove(id);
+            if (posting.size == 0) {
+                postings.remove(posting.term);
+            }
+        }
+
+        int last = size - 1;
+        documents[slot] = documents[last];
+        documentIds[slot] = documentIds[last];
+        documentSlots.put(documentIds[slot], slot + 1);
+        documents[last] = null;
+        documentSlots.remove(id);
+        size--;
+    }
+
+    //пересечение отсортированных списков; позиция в каждом следующем списке только растет,
+    //поэтому каждый список просматривается не больше одного раза
+    private static int[] intersect(List<Posting> lists) {
+        Posting smallest = lists.get(0);
+        int[] result = new int[smallest.size];
+        int[] positions = new int[lists.size()];
+        int found = 0;
+
+        candidates:
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.ids[i];
+
+            for (int j = 1; j < lists.size(); j++) {
+                Posting other = lists.get(j);
+                int position = Arrays.binarySearch(other.ids, positions[j], other.size, id);
+
+                if (position < 0) {
+                    positions[j] = -position - 1;
+                    if (positions[j] == other.size) {
+                        break candidates;
+                    }
+                    continue candidates;
+                }
+                positions[j] = position + 1;
+            }
+
+            result[found++] = id;
+        }
+
+        return Arrays.copyOf(result, found);
+    }
+
+    //отсортированный по возрастанию список id цитат, содержащих слово
+    private static final class Posting {
+        private final String term;
+        private int[] ids = new int[2];
+        private int size;
+
+        private Posting(String term) {
+            this.term = term;
+        }
+
+        //новые цитаты обычно получают наибольший id, поэтому id чаще всего добавляется в конец
+        private void add(int id) {
+            int position = size == 0 || ids[size - 1] < id ? size : Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                position = -position - 1;
+            } else if (position < size) {
+                return;
+            }
+
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length + (ids.length >> 1) + 1);
+            }
+
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        private void remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return;
+            }
+
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+        }
+
+        private void trim() {
+            if (ids.length != size) {
+                ids = Arrays.copyOf(ids, size);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package smileksey.quotesapp.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import smileksey.quotesapp.datasource.ShardContext;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+//распределение цитат по шардам (отдельным БД): шард цитаты - id % count (см. ShardedQuoteIdGenerator)
+//шард 0 - основная БД spring.datasource, остальные задаются quotes.sharding.shard-urls
+//пользователи копируются во все шарды, поэтому автор цитаты всегда находится в той же БД, что и цитата
+//с одним шардом (по умолчанию) все методы выполняют действие в текущей транзакции без переключений
+@Component
+public class QuoteShards {
+
+    private final int count;
+    //чтение и запись на другом шарде выполняются в отдельной транзакции: соединение текущей уже может быть взято
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+    //транзакция не readOnly: данные для индексов в памяти загружаются из основной БД, а не из реплики, которая может
+    //отставать, иначе пропущенные изменения не попадут в индекс до следующей перезагрузки
+    private final TransactionTemplate loadTransaction;
+    private final AtomicInteger nextShardForNewQuotes = new AtomicInteger();
+
+    @Autowired
+    public QuoteShards(PlatformTransactionManager transactionManager,
+                       @Value("${quotes.sharding.shard-urls:}") List<String> shardUrls) {
+        this.count = shardUrls.size() + 1;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.loadTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    //количество шардов
+    public int count() {
+        return count;
+    }
+
+    public boolean isEnabled() {
+        return count > 1;
+    }
+
+    //шард, в котором хранится цитата
+    public int shardOf(int quoteId) {
+        return Math.floorMod(quoteId, count);
+    }
+
+    //выполнять текущую транзакцию на шарде цитаты
+    //вызывается до первого запроса к БД в транзакции: соединение с шардом берется при первом запросе
+    public void useShardOf(int quoteId) {
+        useShard(shardOf(quoteId));
+    }
+
+    //выбрать шард для новых цитат (шарды по очереди) и выполнять текущую транзакцию на нем
+    public void useShardForNewQuotes() {
+        useShard(Math.floorMod(nextShardForNewQuotes.getAndIncrement(), count));
+    }
+
+    //выполнить action для каждого шарда, привязав к нему поток; транзакцию открывает сам action
+    public void onEachShard(Runnable action) {
+        for (int shard = 0; shard < count; shard++) {
+            onShard(shard, () -> {
+                action.run();
+                return null;
+            });
+        }
+    }
+
+    //загрузить данные индекса в памяти из каждого шарда по очереди, каждый шард - в транзакции на основной БД
+    public void loadFromEachShard(Runnable load) {
+        onEachShard(() -> loadTransaction.executeWithoutResult(status -> load.run()));
+    }
+
+    //выполнить action, привязав поток к шарду; транзакцию открывает сам action
+    public <T> T onShard(int shard, Supplier<T> action) {
+        if (!isEnabled()) {
+            return action.get();
+        }
+
+        ShardContext previous = ShardContext.set(new ShardContext(shard, count));
+        try {
+            return action.get();
+        } finally {
+            ShardContext.restore(previous);
+        }
+    }
+
+    //прочитать данные из шарда в отдельной транзакции только для чтения
+    public <T> T readFromShard(int shard, Supplier<T> read) {
+        if (!isEnabled()) {
+            return read.get();
+        }
+        return onShard(shard, () -> readTransaction.execute(status -> read.get()));
+    }
+
+    //выполнить read на каждом шарде по очереди
+    public void readFromEachShard(Runnable read) {
+        if (!isEnabled()) {
+            read.run();
+            return;
+        }
+
+        for (int shard = 0; shard < count; shard++) {
+            readFromShard(shard, () -> {
+                read.run();
+                return null;
+            });
+        }
+    }
+
+    //записать данные в шард в отдельной транзакции
+    public void writeToShard(int shard, Runnable write) {
+        onShard(shard, () -> writeTransaction.execute(status -> {
+            write.run();
+            return null;
+        }));
+    }
+
+    //выполнить запрос на каждом шарде и слить результаты (k-way merge) в первые limit элементов в порядке order
+    //запрос должен возвращать элементы в порядке order и не меньше limit элементов, если они есть в шарде
+    public <T> List<T> mergeFromEachShard(Supplier<List<T>> query, Comparator<? super T> order, int limit) {
+        if (!isEnabled()) {
+            return query.get();
+        }
+
+        //очередь курсоров по спискам шардов, упорядоченная по текущему элементу каждого курсора
+        PriorityQueue<ShardCursor<T>> cursors = new PriorityQueue<>((a, b) -> order.compare(a.current(), b.current()));
+        for (int shard = 0; shard < count; shard++) {
+            List<T> shardResult = readFromShard(shard, query);
+            if (!shardResult.isEmpty()) {
+                cursors.add(new ShardCursor<>(shardResult));
+            }
+        }
+
+        List<T> merged = new ArrayList<>(limit);
+        while (merged.size() < limit && !cursors.isEmpty()) {
+            ShardCursor<T> cursor = cursors.poll();
+            merged.add(cursor.current());
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    //привязать текущую транзакцию к шарду до ее завершения
+    private void useShard(int shard) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Integer boundShard = (Integer) TransactionSynchronizationManager.getResource(this);
+        if (boundShard != null) {
+            if (boundShard != shard) {
+                throw new IllegalStateException("Transaction is already bound to shard " + boundShard + ", cannot switch to shard " + shard);
+            }
+            return;
+        }
+
+        ShardContext previous = ShardContext.set(new ShardContext(shard, count));
+        TransactionSynchronizationManager.bindResource(this, shard);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(QuoteShards.this);
+                ShardContext.restore(previous);
+            }
+        });
+    }
+
+    private static final class ShardCursor<T> {
+        private final List<T> items;
+        private int position;
+
+        private ShardCursor(List<T> items) {
+            this.items = items;
+        }
+
+        private T current() {
+            return items.get(position);
+        }
+
+        private boolean advance() {
+            return ++position < items.size();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package smileksey.quotesapp.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.exceptions.VoteRejectedException;
+import smileksey.quotesapp.repositories.QuoteVotersRepository;
+
+import java.util.Arrays;
+
+//кто и в каком направлении уже голосовал за цитату: не больше одного голоса пользователя за цитату
+//голоса цитаты загружаются из quote_vote при первом голосе за нее и хранятся в памяти отсортированным массивом
+//userId * 4 + состояние (4 байта на голос), поэтому повторный голос отклоняется без обращения к БД;
+//кэш ограничен оценкой занимаемой памяти, и голоса редко голосующих цитат вытесняются первыми
+//для каждого голоса хранится, на сколько он изменил рейтинг: голос "против" не уменьшает нулевой рейтинг,
+//и при смене направления отменяется только фактическое изменение, иначе смена направления поднимала бы рейтинг на 2
+//БД остается источником истины: запись голоса - условные UPDATE/INSERT, которые не меняют уже учтенный голос
+@Component
+public class QuoteVoters {
+
+    //заголовок объекта Voters, массива и запись в таблице кэша
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    //пользователь не голосовал за цитату
+    private static final int NO_VOTE = -1;
+
+    private final QuoteVotersRepository quoteVotersRepository;
+    private final Cache<Integer, Voters> votersByQuote;
+
+    //изменение рейтинга цитаты голосами пользователя
+    @FunctionalInterface
+    public interface Rating {
+        //применить count голосов в направлении direction, вернуть количество голосов, изменивших рейтинг
+        int apply(int direction, int count);
+    }
+
+    @Autowired
+    public QuoteVoters(QuoteVotersRepository quoteVotersRepository,
+                       @Value("${quotes.votes.voters.max-memory:64MB}") DataSize maxMemory) {
+        this.quoteVotersRepository = quoteVotersRepository;
+        this.votersByQuote = Caffeine.newBuilder()
+                .maximumWeight(maxMemory.toBytes())
+                .weigher((Integer quoteId, Voters voters) -> voters.weight())
+                .build();
+    }
+
+    //записать голос пользователя за цитату в текущей транзакции и изменить рейтинг через rating
+    //первый голос меняет рейтинг на 1, смена направления сначала отменяет прежнее изменение рейтинга,
+    //повторный голос в том же направлении ничего не меняет
+    public void vote(int quoteId, int userId, int direction, Rating rating) {
+        //голоса загружаются в той же транзакции, что и запись, - из основной БД и шарда цитаты
+        Voters voters = votersByQuote.get(quoteId, id -> new Voters(quoteVotersRepository.findVoters(id)));
+        int previous = voters.state(userId);
+
+        if (previous != NO_VOTE && directionOf(previous) == direction) {
+            return;
+        }
+
+        if (!claim(quoteId, userId, direction, previous)) {
+            //голоса в памяти устарели (голос записан другим экземпляром приложения) - перечитать их из БД
+            voters = new Voters(quoteVotersRepository.findVoters(quoteId));
+            votersByQuote.put(quoteId, voters);
+            previous = voters.state(userId);
+
+            if (previous != NO_VOTE && directionOf(previous) == direction) {
+                return;
+            }
+            if (!claim(quoteId, userId, direction, previous)) {
+                throw new VoteRejectedException("Vote of this user for this quote is already being recorded");
+            }
+        }
+
+        //голос "за" поднимает вклад пользователя до 1, голос "против" опускает до -1, пока рейтинг больше нуля
+        int previousEffect = previous == NO_VOTE ? 0 : effectOf(previous);
+        int count = direction > 0 ? 1 - previousEffect : previousEffect + 1;
+        int effect = previousEffect + direction * rating.apply(direction, count);
+
+        //claim записал effect = direction, исправляем, только если часть голосов "против" уперлась в ноль
+        if (effect != direction) {
+            quoteVotersRepository.setEffect(quoteId, userId, effect);
+        }
+
+        int state = QuoteVotersRepository.encode(userId, direction, effect);
+
+        //в памяти голос появляется только после коммита, при откате транзакции он не учитывается
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                remember(quoteId, state);
+            }
+        });
+    }
+
+    //оценка памяти, занятой голосами в кэше, в байтах
+    public long weightedSize() {
+        return votersByQuote.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteDeleted(QuoteDeletedEvent event) {
+        votersByQuote.invalidate(event.getId());
+    }
+
+    //записать в БД голос пользователя вместо previous, пока не известно, на сколько он изменит рейтинг
+    //возвращает false, если в БД не тот голос, что в памяти
+    private boolean claim(int quoteId, int userId, int direction, int previous) {
+        try {
+            //первый голос пользователя - сразу INSERT, без попытки изменить несуществующую строку
+            if (previous == NO_VOTE) {
+                return quoteVotersRepository.insert(quoteId, userId, direction, direction) == 1;
+            }
+            return quoteVotersRepository.changeVote(quoteId, userId, direction, direction, directionOf(previous), effectOf(previous)) == 1;
+        } catch (DuplicateKeyException e) {
+            //тот же пользователь параллельно голосует за ту же цитату
+            throw new VoteRejectedException("Vote of this user for this quote is already being recorded");
+        }
+    }
+
+    private void remember(int quoteId, int state) {
+        Voters voters = votersByQuote.getIfPresent(quoteId);
+
+        //массив вырос - запись заменяется сама на себя, чтобы кэш пересчитал ее вес
+        if (voters != null && voters.set(state)) {
+            votersByQuote.asMap().replace(quoteId, voters, voters);
+        }
+    }
+
+    //1 - голос "за", -1 - "против"
+    private static int directionOf(int state) {
+        return (state & 3) == 3 ? 1 : -1;
+    }
+
+    //на сколько голоса пользователя изменили рейтинг
+    private static int effectOf(int state) {
+        return (state & 3) == 3 ? 1 : (state & 3) - 1;
+    }
+
+    //голоса одной цитаты: отсортированный массив QuoteVotersRepository.encode(userId, direction, effect)
+    private static final class Voters {
+        private int[] entries;
+        private int size;
+
+        private Voters(int[] entries) {
+            this.entries = entries;
+            this.size = entries.length;
+        }
+
+        //голос пользователя или NO_VOTE, если пользователь не голосовал
+        private synchronized int state(int userId) {
+            int position = find(userId);
+            return position < 0 ? NO_VOTE : entries[position];
+        }
+
+        //запомнить голос, возвращает true, если массив пришлось увеличить
+        private synchronized boolean set(int state) {
+            int position = find(state >> 2);
+
+            if (position >= 0) {
+                entries[position] = state;
+                return false;
+            }
+
+            position = -position - 1;
+            boolean grown = size == entries.length;
+            if (grown) {
+                entries = Arrays.copyOf(entries, size + (size >> 1) + 4);
+            }
+
+            System.arraycopy(entries, position, entries, position + 1, size - position);
+            entries[position] = state;
+            size++;
+            return grown;
+        }
+
+        private synchronized int weight() {
+            return ENTRY_OVERHEAD_BYTES + 4 * entries.length;
+        }
+
+        //позиция голоса пользователя или (-(позиция вставки) - 1), как в Arrays.binarySearch
+        private int find(int userId) {
+            int position = Arrays.binarySearch(entries, 0, size, userId * 4);
+            if (position >= 0) {
+                return position;
+            }
+
+            //голоса пользователя занимают значения от userId * 4 до userId * 4 + 3 и стоят на месте вставки userId * 4
+            int next = -position - 1;
+            return next < size && entries[next] >> 2 == userId ? next : position;
+        }
+    }
+}
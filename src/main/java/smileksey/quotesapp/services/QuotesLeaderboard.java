@@ -0,0 +1,374 @@
+package smileksey.quotesapp.services;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.events.QuoteSavedEvent;
+import smileksey.quotesapp.events.QuoteVotedEvent;
+import smileksey.quotesapp.events.QuoteVotesFlushedEvent;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.repositories.QuotesRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+//рейтинг цитат в памяти
+//загружается из БД один раз при старте и затем обновляется по событиям добавления/изменения/удаления/голосования,
+//поэтому списки лучших и худших цитат отдаются без обращения к БД за O(k)
+//для каждой цитаты хранятся рейтинг в БД и сумма еще не записанных голосов VoteAggregator: события голосования
+//несут фактическое изменение рейтинга в БД, а нижняя граница к незаписанным голосам применяется так же, как при записи пакета
+//события разных транзакций могут прийти не в порядке коммитов: сохранение после удаления не возвращает цитату
+//(DeletedQuotes), а голоса, пришедшие раньше сохранения цитаты, откладываются до ее появления (EarlyVotes)
+@Component
+public class QuotesLeaderboard {
+
+    //размер списков лучших и худших цитат, для которых ведутся отдельные версии (/quotes/top10, /quotes/worst10)
+    public static final int HEAD_SIZE = 10;
+
+    //сначала больший рейтинг, при равном рейтинге - меньший id
+    private static final Comparator<RankKey> RANK_ORDER = Comparator.comparingInt((RankKey key) -> key.votes).reversed()
+            .thenComparingInt(key -> key.id);
+
+    private final QuotesRepository quotesRepository;
+    private final QuoteShards quoteShards;
+    private final DeletedQuotes deletedQuotes;
+    private final int maxSize;
+
+    //актуальные данные цитат: id -> снимок
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    //упорядоченный по рейтингу индекс; может кратковременно содержать устаревшие ключи, они пропускаются при чтении
+    private final NavigableSet<RankKey> ranking = new ConcurrentSkipListSet<>(RANK_ORDER);
+    //голоса за цитаты, событие сохранения которых еще не пришло
+    private final EarlyVotes earlyVotes = new EarlyVotes();
+    //версия рейтинга, увеличивается после каждого изменения - по ней клиенты проверяют, изменились ли списки
+    private final AtomicLong version = new AtomicLong();
+    //версии списков 10 лучших и 10 худших цитат
+    private final HeadVersion topVersion = new HeadVersion(false);
+    private final HeadVersion worstVersion = new HeadVersion(true);
+
+    @Autowired
+    public QuotesLeaderboard(QuotesRepository quotesRepository, QuoteShards quoteShards, DeletedQuotes deletedQuotes,
+                             @Value("${quotes.leaderboard.max-size:100}") int maxSize) {
+        this.quotesRepository = quotesRepository;
+        this.quoteShards = quoteShards;
+        this.deletedQuotes = deletedQuotes;
+        this.maxSize = maxSize;
+    }
+
+    //загрузить все цитаты из БД
+    @PostConstruct
+    public void reload() {
+        entries.clear();
+        ranking.clear();
+        earlyVotes.clear();
+
+        //цитаты загружаются из всех шардов
+        quoteShards.loadFromEachShard(() -> {
+            try (Stream<QuoteDto> quotes = quotesRepository.streamAllAsDto()) {
+                quotes.forEach(quoteDto -> put(quoteDto.getId(), new Entry(quoteDto)));
+            }
+        });
+        version.incrementAndGet();
+    }
+
+    //максимальное количество цитат, которое можно запросить за раз
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    //текущая версия рейтинга
+    //версию нужно читать до получения списка: тогда список не старее версии, и клиент не получит 304 на измененные данные
+    public long getVersion() {
+        return version.get();
+    }
+
+    //версия списка 10 лучших цитат: меняется, только если изменился состав, порядок или данные цитат этого списка,
+    //поэтому голоса за цитаты вне списка ее не меняют; как и общую версию, ее нужно читать до получения списка
+    public long getTopVersion() {
+        return topVersion.get();
+    }
+
+    //версия списка 10 худших цитат
+    public long getWorstVersion() {
+        return worstVersion.get();
+    }
+
+    //количество цитат в рейтинге
+    public int size() {
+        return entries.size();
+    }
+
+    //получить данные цитаты по id
+    public Optional<QuoteDto> find(int id) {
+        return Optional.ofNullable(entries.get(id)).map(Entry::toQuoteDto);
+    }
+
+    //выбрать из ids n цитат с наилучшими оценками, по убыванию рейтинга; отсутствующие в рейтинге id пропускаются
+    //куча из n элементов: O(m log n) для m id
+    public List<QuoteDto> best(int[] ids, int n) {
+        PriorityQueue<Entry> heap = new PriorityQueue<>(n + 1, (a, b) -> RANK_ORDER.compare(b.key, a.key));
+
+        for (int id : ids) {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                continue;
+            }
+
+            if (heap.size() < n) {
+                heap.add(entry);
+            } else if (RANK_ORDER.compare(entry.key, heap.peek().key) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        List<QuoteDto> quotes = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            quotes.add(heap.poll().toQuoteDto());
+        }
+        Collections.reverse(quotes);
+
+        return quotes;
+    }
+
+    //получить n цитат с наилучшими оценками
+    public List<QuoteDto> top(int n) {
+        return collect(ranking.iterator(), n);
+    }
+
+    //получить n цитат с наихудшими оценками
+    public List<QuoteDto> worst(int n) {
+        return collect(ranking.descendingIterator(), n);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteSaved(QuoteSavedEvent event) {
+        put(event.getQuote().getId(), new Entry(event.getQuote()));
+        version.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteDeleted(QuoteDeletedEvent event) {
+        //отметка ставится до удаления: сохранение, которое придет позже, ее увидит
+        deletedQuotes.add(event.getId());
+        entries.compute(event.getId(), (id, old) -> {
+            earlyVotes.take(id);
+            if (old != null) {
+                ranking.remove(old.key);
+            }
+            return null;
+        });
+        version.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteVoted(QuoteVotedEvent event) {
+        int delta = event.getDelta();
+        vote(event.getId(), event.isPending() ? 0 : delta, event.isPending() ? delta : 0);
+        version.incrementAndGet();
+    }
+
+    //накопленные голоса записаны в БД: их сумма переходит из незаписанных голосов в рейтинг в БД
+    //с тем изменением, которое получилось в БД после применения нижней границы
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteVotesFlushed(QuoteVotesFlushedEvent event) {
+        event.getDeltas().forEach((id, delta) -> vote(id, event.getApplied().getOrDefault(id, 0), -delta));
+        version.incrementAndGet();
+    }
+
+    //добавить цитату или обновить ее данные
+    //рейтинг уже известной цитаты меняется только событиями голосования, поэтому при изменении текста он сохраняется;
+    //к новой цитате добавляются голоса, пришедшие раньше нее; удаленная цитата не добавляется
+    private void put(int id, Entry entry) {
+        entries.compute(id, (key, old) -> {
+            if (old != null) {
+                return replace(old, entry.withVotes(old.storedVotes, old.pendingDelta));
+            }
+            if (deletedQuotes.contains(id)) {
+                return null;
+            }
+
+            EarlyVotes.Votes early = earlyVotes.take(id);
+            return replace(null, early == null ? entry
+                    : entry.withVotes(entry.storedVotes + early.getStoredDelta(), entry.pendingDelta + early.getPendingDelta()));
+        });
+    }
+
+    //изменить рейтинг в БД и сумму незаписанных голосов цитаты; если цитаты еще нет, голоса откладываются до ее появления
+    private void vote(int id, int storedDelta, int pendingDelta) {
+        entries.compute(id, (key, old) -> {
+            if (old == null) {
+                if (!deletedQuotes.contains(id)) {
+                    earlyVotes.add(id, storedDelta, pendingDelta);
+                }
+                return null;
+            }
+            return replace(old, old.withVotes(old.storedVotes + storedDelta, old.pendingDelta + pendingDelta));
+        });
+    }
+
+    //заменить ключ цитаты в индексе, вызывается внутри compute, поэтому изменения одной цитаты не пересекаются
+    //новый ключ добавляется раньше, чем удаляется старый, чтобы читатель не пропустил цитату
+    private Entry replace(Entry old, Entry updated) {
+        if (old == null || !old.key.equals(updated.key)) {
+            ranking.add(updated.key);
+            if (old != null) {
+                ranking.remove(old.key);
+            }
+        }
+        return updated;
+    }
+
+    private List<QuoteDto> collect(Iterator<RankKey> iterator, int n) {
+        List<QuoteDto> quotes = new ArrayList<>(Math.min(n, maxSize));
+
+        while (quotes.size() < n && iterator.hasNext()) {
+            RankKey key = iterator.next();
+            Entry entry = entries.get(key.id);
+
+            //ключ устарел - цитата удалена или ее рейтинг уже изменился
+            if (entry != null && entry.key.votes == key.votes) {
+                quotes.add(entry.toQuoteDto());
+            }
+        }
+
+        return quotes;
+    }
+
+    //версия первых HEAD_SIZE цитат списка, проверяется лениво при чтении после изменения общей версии:
+    //записи цитат неизменяемы и заменяются при любом изменении, поэтому список не изменился,
+    //если его первые записи - те же объекты; проверка - O(HEAD_SIZE) без выделения памяти под записи
+    private final class HeadVersion {
+        private final boolean worst;
+        private Entry[] head = new Entry[HEAD_SIZE];
+        private Entry[] scratch = new Entry[HEAD_SIZE];
+        private long checkedVersion = -1;
+        private long headVersion;
+
+        private HeadVersion(boolean worst) {
+            this.worst = worst;
+        }
+
+        private synchronized long get() {
+            long current = version.get();
+            if (current == checkedVersion) {
+                return headVersion;
+            }
+
+            Arrays.fill(scratch, null);
+            Iterator<RankKey> iterator = worst ? ranking.descendingIterator() : ranking.iterator();
+            int size = 0;
+
+            while (size < HEAD_SIZE && iterator.hasNext()) {
+                RankKey key = iterator.next();
+                Entry entry = entries.get(key.id);
+                if (entry != null && entry.key.votes == key.votes) {
+                    scratch[size++] = entry;
+                }
+            }
+
+            //сравнение по ссылкам: equals в Entry не переопределен
+            if (!Arrays.equals(scratch, head)) {
+                Entry[] previous = head;
+                head = scratch;
+                scratch = previous;
+                headVersion++;
+            }
+            checkedVersion = current;
+
+            return headVersion;
+        }
+    }
+
+    //ключ сортировки: рейтинг и id
+    private static final class RankKey {
+        private final int votes;
+        private final int id;
+
+        private RankKey(int votes, int id) {
+            this.votes = votes;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RankKey other && other.votes == votes && other.id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * votes + id;
+        }
+    }
+
+    //неизменяемый снимок данных цитаты, не связанный с persistence context
+    private static final class Entry {
+        //key.votes - рейтинг с учетом незаписанных голосов
+        private final RankKey key;
+        private final int storedVotes;
+        private final int pendingDelta;
+        private final String content;
+        private final Date dateOfCreation;
+        private final Date dateOfUpdate;
+        private final String userName;
+        private final String userEmail;
+
+        private Entry(Quote quote) {
+            this.key = new RankKey(quote.getVotes(), quote.getId());
+            this.storedVotes = quote.getVotes();
+            this.pendingDelta = 0;
+            this.content = quote.getContent();
+            this.dateOfCreation = quote.getDateOfCreation();
+            this.dateOfUpdate = quote.getDateOfUpdate();
+            this.userName = quote.getUser().getName();
+            this.userEmail = quote.getUser().getEmail();
+        }
+
+        private Entry(QuoteDto quoteDto) {
+            this.key = new RankKey(quoteDto.getVotes(), quoteDto.getId());
+            this.storedVotes = quoteDto.getVotes();
+            this.pendingDelta = 0;
+            this.content = quoteDto.getContent();
+            this.dateOfCreation = quoteDto.getDateOfCreation();
+            this.dateOfUpdate = quoteDto.getDateOfUpdate();
+            this.userName = quoteDto.getUserName();
+            this.userEmail = quoteDto.getUserEmail();
+        }
+
+        private Entry(Entry other, int storedVotes, int pendingDelta) {
+            this.key = new RankKey(VoteAggregator.effectiveVotes(storedVotes, pendingDelta), other.key.id);
+            this.storedVotes = storedVotes;
+            this.pendingDelta = pendingDelta;
+            this.content = other.content;
+            this.dateOfCreation = other.dateOfCreation;
+            this.dateOfUpdate = other.dateOfUpdate;
+            this.userName = other.userName;
+            this.userEmail = other.userEmail;
+        }
+
+        private Entry withVotes(int storedVotes, int pendingDelta) {
+            return new Entry(this, storedVotes, pendingDelta);
+        }
+
+        private QuoteDto toQuoteDto() {
+            return new QuoteDto(key.id, content, userName, userEmail, key.votes, dateOfCreation, dateOfUpdate);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package smileksey.quotesapp.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import smileksey.quotesapp.events.QuoteVotedEvent;
+
+//счетчики бизнес-событий: голоса, добавленные цитаты, неверные данные пользователя
+//счетчики создаются один раз, увеличение счетчика - одна операция LongAdder без выделения памяти
+@Component
+public class QuotesMetrics {
+
+    private final Counter upvotes;
+    private final Counter downvotes;
+    private final Counter quotesCreated;
+    private final Counter credentialFailures;
+
+    @Autowired
+    public QuotesMetrics(MeterRegistry registry) {
+        this.upvotes = Counter.builder("quotes.votes").tag("direction", "up").register(registry);
+        this.downvotes = Counter.builder("quotes.votes").tag("direction", "down").register(registry);
+        this.quotesCreated = Counter.builder("quotes.created").register(registry);
+        this.credentialFailures = Counter.builder("quotes.credentials.failures")
+                .description("Quote writes rejected because of unknown email or wrong password").register(registry);
+    }
+
+    //учитываются только голоса, изменившие рейтинг, после коммита; пакет голосов за цитату - событие с суммой голосов
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteVoted(QuoteVotedEvent event) {
+        (event.getDelta() > 0 ? upvotes : downvotes).increment(Math.abs(event.getDelta()));
+    }
+
+    public void quotesCreated(int count) {
+        quotesCreated.increment(count);
+    }
+
+    public void credentialsRejected() {
+        credentialFailures.increment();
+    }
+}
@@ -1,122 +1,557 @@
 package smileksey.quotesapp.services;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.dto.QuotesPageDto;
+import smileksey.quotesapp.dto.TrendingQuoteDto;
+import smileksey.quotesapp.dto.VoteDeltaDto;
+import smileksey.quotesapp.dto.VoteResultDto;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.events.QuoteSavedEvent;
+import smileksey.quotesapp.events.QuoteVotedEvent;
+import smileksey.quotesapp.exceptions.InvalidSearchQueryException;
 import smileksey.quotesapp.exceptions.QuoteNotFoundException;
 import smileksey.quotesapp.exceptions.QuoteNotSavedException;
+import smileksey.quotesapp.exceptions.VoteRejectedException;
 import smileksey.quotesapp.models.Quote;
 import smileksey.quotesapp.models.User;
+import smileksey.quotesapp.repositories.QuoteVotesBatchRepository;
 import smileksey.quotesapp.repositories.QuotesRepository;
+import smileksey.quotesapp.util.QuotesCursor;
+import smileksey.quotesapp.util.QuotesSort;
+import smileksey.quotesapp.util.TrendingWindow;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
+
+//время выполнения каждого публичного метода записывается в таймер quotes.service (теги class и method)
 @Service
 @Transactional(readOnly = true)
+@Timed("quotes.service")
 public class QuotesService {
 
+    private static final Logger log = LoggerFactory.getLogger(QuotesService.class);
+    private static final int RANDOM_QUOTE_ATTEMPTS = 3;
+    //начальные значения ключей для первой страницы списка цитат
+    private static final int FIRST_PAGE_VOTES = Integer.MAX_VALUE;
+    private static final Date FIRST_PAGE_CREATED = java.sql.Date.valueOf(LocalDate.of(9999, 12, 31));
+    //курсор на цитате без даты: все цитаты с датой уже пройдены, условие по дате не выбирает ни одной
+    private static final Date UNDATED_PAGE_CREATED = java.sql.Date.valueOf(LocalDate.of(1, 1, 1));
+
     private final QuotesRepository quotesRepository;
     private final UsersService usersService;
+    private final VoteAggregator voteAggregator;
+    private final QuotesLeaderboard leaderboard;
+    private final RandomQuoteIndex randomQuoteIndex;
+    private final WeightedQuoteSampler weightedQuoteSampler;
+    private final QuoteDtoCache quoteDtoCache;
+    private final QuotesMetrics quotesMetrics;
+    private final QuoteShards quoteShards;
+    private final TrendingQuotes trendingQuotes;
+    private final QuoteSearchIndex quoteSearchIndex;
+    private final QuoteVoters quoteVoters;
+    private final QuoteVotesBatchRepository quoteVotesBatchRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManager entityManager;
+    private final int batchSize;
+    private final int batchMaxItems;
+    private final int pageMaxLimit;
+    private final boolean anonymousVotesEnabled;
 
     @Autowired
-    public QuotesService(QuotesRepository quotesRepository, UsersService usersService) {
+    public QuotesService(QuotesRepository quotesRepository, UsersService usersService, VoteAggregator voteAggregator,
+                         QuotesLeaderboard leaderboard, RandomQuoteIndex randomQuoteIndex,
+                         WeightedQuoteSampler weightedQuoteSampler, QuoteDtoCache quoteDtoCache, QuotesMetrics quotesMetrics,
+                         QuoteShards quoteShards, TrendingQuotes trendingQuotes, QuoteSearchIndex quoteSearchIndex,
+                         QuoteVoters quoteVoters, QuoteVotesBatchRepository quoteVotesBatchRepository,
+                         ApplicationEventPublisher eventPublisher,
+                         EntityManager entityManager,
+                         @Value("${quotes.batch.size:50}") int batchSize,
+                         @Value("${quotes.batch.max-items:10000}") int batchMaxItems,
+                         @Value("${quotes.page.max-limit:100}") int pageMaxLimit,
+                         @Value("${quotes.votes.anonymous-enabled:true}") boolean anonymousVotesEnabled) {
         this.quotesRepository = quotesRepository;
         this.usersService = usersService;
+        this.voteAggregator = voteAggregator;
+        this.leaderboard = leaderboard;
+        this.randomQuoteIndex = randomQuoteIndex;
+        this.weightedQuoteSampler = weightedQuoteSampler;
+        this.quoteDtoCache = quoteDtoCache;
+        this.quotesMetrics = quotesMetrics;
+        this.quoteShards = quoteShards;
+        this.trendingQuotes = trendingQuotes;
+        this.quoteSearchIndex = quoteSearchIndex;
+        this.quoteVoters = quoteVoters;
+        this.quoteVotesBatchRepository = quoteVotesBatchRepository;
+        this.eventPublisher = eventPublisher;
+        this.entityManager = entityManager;
+        this.batchSize = batchSize;
+        this.batchMaxItems = batchMaxItems;
+        this.pageMaxLimit = pageMaxLimit;
+        this.anonymousVotesEnabled = anonymousVotesEnabled;
     }
 
     //добавить новую цитату в БД
     @Transactional
     public void add(Quote newQuote) {
+        quoteShards.useShardForNewQuotes();
         enrichNewQuoteData(newQuote);
         quotesRepository.save(newQuote);
+        eventPublisher.publishEvent(new QuoteSavedEvent(newQuote));
+        quotesMetrics.quotesCreated(1);
+    }
+
+    //добавить в БД пакет новых цитат одного пользователя
+    //данные пользователя проверяются один раз, цитаты вставляются пакетами JDBC по quotes.batch.size штук
+    //все цитаты пакета попадают в один шард
+    @Transactional
+    public void addAll(User author, List<Quote> newQuotes) {
+        quoteShards.useShardForNewQuotes();
+
+        if (newQuotes.size() > batchMaxItems) {
+            throw new QuoteNotSavedException("Too many quotes in one batch. Maximum is " + batchMaxItems);
+        }
+
+        User actualUser = checkCredentialsAndReturnUserFromDb(author);
+        Date now = new Date();
+
+        for (int i = 0; i < newQuotes.size(); i++) {
+            Quote newQuote = newQuotes.get(i);
+            newQuote.setUser(actualUser);
+            newQuote.setDateOfCreation(now);
+
+            quotesRepository.save(newQuote);
+            eventPublisher.publishEvent(new QuoteSavedEvent(newQuote));
+
+            //отправить накопленный пакет в БД и освободить persistence context
+            if ((i + 1) % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+
+        quotesMetrics.quotesCreated(newQuotes.size());
     }
 
     //изменить существующую цитату в БД
     @Transactional
     public void update(Quote updatedQuote, int id) {
+        quoteShards.useShardOf(id);
 
-        Quote actualQuote = quotesRepository.findById(id).orElseThrow(() -> new QuoteNotFoundException("Quote with this ID is not found"));
+        Quote actualQuote = quotesRepository.findWithUserById(id).orElseThrow(() -> new QuoteNotFoundException("Quote with this ID is not found"));
 
         if (!actualQuote.getUser().getEmail().equals(updatedQuote.getUser().getEmail())) {
             throw new QuoteNotSavedException("This quote was created by another user. You cannot modify it.");
         }
 
-        checkCredentialsAndReturnUserFromDb(updatedQuote);
+        checkCredentialsAndReturnUserFromDb(updatedQuote.getUser());
 
         actualQuote.setContent(updatedQuote.getContent());
         actualQuote.setDateOfUpdate(new Date());
 
         quotesRepository.save(actualQuote);
+        eventPublisher.publishEvent(new QuoteSavedEvent(actualQuote));
     }
 
-    //получить цитату из БД по id
-    public Quote findById(int id) {
-        return quotesRepository.findById(id).orElseThrow(() -> new QuoteNotFoundException("Quote with this ID is not found"));
+    //получить цитату по id из кэша или из БД (одним запросом вместе с данными автора)
+    //в кэше хранится рейтинг из БД, незаписанные голоса добавляются при каждом чтении
+    //метод выполняется без транзакции: при промахе кэш сам читает цитату в отдельной транзакции из основной БД
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public QuoteDto findById(int id) {
+        quoteShards.useShardOf(id);
+        return voteAggregator.readConsistently(() -> {
+            QuoteDto quoteDto = quoteDtoCache.get(id, quotesRepository::findDtoById).orElseThrow(() -> new QuoteNotFoundException("Quote with this ID is not found"));
+            applyPendingVotes(quoteDto);
+            return quoteDto;
+        });
     }
 
     //получить случайную цитату из БД
-    public Quote findRandomQuote() {
-        //находим количество записей в таблице quote
-        long quotesQty = quotesRepository.count();
-        //вычисляем случайный индекс в пределах найденного количества записей
-        int index = (int) (Math.random() * quotesQty);
-        //используем пагинацию, чтобы вытащить одну запись со случайным индексом
-        Page<Quote> quotePage = quotesRepository.findAll(PageRequest.of(index, 1));
+    public QuoteDto findRandomQuote() {
+        return findSampledQuote(randomQuoteIndex::sample);
+    }
 
-        Quote randomQuote = null;
+    //получить случайную цитату из БД, вероятность выбора пропорциональна рейтингу цитаты
+    public QuoteDto findWeightedRandomQuote() {
+        return findSampledQuote(weightedQuoteSampler::sample);
+    }
+
+    //выгрузить все цитаты, передавая их по одной в consumer
+    //цитаты читаются курсором в транзакции только для чтения и сразу в виде QuoteDto,
+    //поэтому расход памяти не зависит от количества цитат; шарды выгружаются по очереди
+    public void exportAll(Consumer<QuoteDto> consumer) {
+        quoteShards.readFromEachShard(() -> {
+            try (Stream<QuoteDto> quotes = quotesRepository.streamAllAsDto()) {
+                quotes.forEach(quoteDto -> {
+                    applyPendingVotes(quoteDto);
+                    consumer.accept(quoteDto);
+                });
+            }
+        });
+    }
 
-        if (quotePage.hasContent()) {
-            randomQuote = quotePage.getContent().get(0);
+    //получить страницу списка цитат
+    //after - курсор, полученный с предыдущей страницей (null для первой страницы), limit ограничен quotes.page.max-limit
+    public QuotesPageDto findPage(QuotesSort sort, String after, int limit) {
+
+        int pageSize = Math.max(1, Math.min(limit, pageMaxLimit));
+        //запрашиваем на одну цитату больше, чтобы узнать, есть ли следующая страница
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+        QuotesCursor cursor = after == null ? null : QuotesCursor.decode(after, sort);
+
+        //каждый шард возвращает свою страницу после курсора, общая страница - первые цитаты из их слияния
+        List<QuoteDto> quotes = quoteShards.mergeFromEachShard(() -> switch (sort) {
+            case ID -> quotesRepository.findPageOrderById(cursor == null ? 0 : cursor.getId(), pageable);
+            case VOTES -> quotesRepository.findPageOrderByVotes(
+                    cursor == null ? FIRST_PAGE_VOTES : (int) cursor.getKey(),
+                    cursor == null ? 0 : cursor.getId(), pageable);
+            case CREATED -> cursor != null && cursor.getKey() == QuotesCursor.NO_DATE
+                    ? quotesRepository.findPageOrderByCreated(UNDATED_PAGE_CREATED, 0, cursor.getId(), pageable)
+                    : quotesRepository.findPageOrderByCreated(
+                            cursor == null ? FIRST_PAGE_CREATED : new Date(cursor.getKey()),
+                            cursor == null ? Integer.MAX_VALUE : cursor.getId(), Integer.MAX_VALUE, pageable);
+        }, sort.order(), pageSize + 1);
+
+        String next = null;
+
+        if (quotes.size() > pageSize) {
+            quotes = quotes.subList(0, pageSize);
+            next = QuotesCursor.after(sort, quotes.get(pageSize - 1)).encode();
         }
 
-        return randomQuote;
+        //курсор строится по рейтингу из БД, а клиенту показывается рейтинг с учетом еще не записанных голосов
+        quotes.forEach(this::applyPendingVotes);
+
+        return new QuotesPageDto(quotes, next);
     }
 
-    //голосовать "за" конкретную цитату
+    //найти цитаты, содержащие все слова запроса, сначала с наибольшим рейтингом
+    //id ищутся в обратном индексе, данные и рейтинг цитат берутся из рейтинга в памяти, limit ограничен quotes.page.max-limit
+    public List<QuoteDto> search(String query, int limit) {
+        Set<String> terms = QuoteSearchIndex.tokenize(query);
+
+        if (terms.isEmpty()) {
+            throw new InvalidSearchQueryException("Search query must contain at least one word");
+        }
+
+        return leaderboard.best(quoteSearchIndex.search(terms), Math.max(1, Math.min(limit, pageMaxLimit)));
+    }
+
+    //анонимно голосовать "за" конкретную цитату
     @Transactional
     public void upvote(int id) {
+        upvote(id, null);
+    }
 
-        Quote quote = quotesRepository.findById(id).orElseThrow(() -> new QuoteNotFoundException("Quote with this ID is not found"));
-
-        quote.setVotes(quote.getVotes() + 1);
-        quotesRepository.save(quote);
+    //голосовать "за" конкретную цитату от имени пользователя (email и пароль) или анонимно (voter == null)
+    //рейтинг увеличивается одним запросом UPDATE, поэтому параллельные голоса не теряются
+    @Transactional
+    public void upvote(int id, User voter) {
+        quoteShards.useShardOf(id);
+
+        if (voter != null) {
+            voteAsUser(id, voter, 1);
+        } else {
+            checkAnonymousVotesEnabled();
+            applyUpvote(id);
+        }
     }
 
-    //голосовать "против" конкретной цитаты
+    //анонимно голосовать "против" конкретной цитаты
     @Transactional
     public void downvote(int id) {
+        downvote(id, null);
+    }
+
+    //голосовать "против" конкретной цитаты от имени пользователя или анонимно (voter == null)
+    //рейтинг уменьшается одним запросом UPDATE и не может стать меньше нуля
+    @Transactional
+    public void downvote(int id, User voter) {
+        quoteShards.useShardOf(id);
+
+        if (voter != null) {
+            voteAsUser(id, voter, -1);
+        } else {
+            checkAnonymousVotesEnabled();
+            applyDownvote(id);
+        }
+    }
+
+    //применить пакет анонимных голосов: голоса за одну цитату суммируются, рейтинг каждой цитаты меняется
+    //одним UPDATE в общем JDBC batch; как и при write-behind, нижняя граница (ноль) применяется к сумме голосов
+    //каждый шард изменяется в своей транзакции, события голосования с фактическим изменением рейтинга публикуются
+    //в транзакции шарда и доставляются после ее коммита
+    //при разбиении на шарды ошибка одного шарда не отменяет уже записанные голоса других: id этого шарда
+    //возвращаются с failed = true, и только их голоса можно отправить повторно; если не записан ни один шард - исключение
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<VoteResultDto> voteAll(List<VoteDeltaDto> votes) {
+
+        if (!anonymousVotesEnabled) {
+            throw new VoteRejectedException("Voting requires userEmail and userPassword");
+        }
 
-        Quote quote = quotesRepository.findById(id).orElseThrow(() -> new QuoteNotFoundException("Quote with this ID is not found"));
+        if (votes.size() > batchMaxItems) {
+            throw new VoteRejectedException("Too many votes in one batch. Maximum is " + batchMaxItems);
+        }
 
-        if (quote.getVotes() > 0) {
-            quote.setVotes(quote.getVotes() - 1);
-            quotesRepository.save(quote);
+        Map<Integer, Long> merged = new TreeMap<>();
+        for (VoteDeltaDto vote : votes) {
+            merged.merge(vote.getId(), (long) vote.getDelta(), Long::sum);
         }
+
+        Map<Integer, List<int[]>> deltasByShard = new TreeMap<>();
+        List<VoteResultDto> results = new ArrayList<>(merged.size());
+
+        for (Map.Entry<Integer, Long> vote : merged.entrySet()) {
+            int id = vote.getKey();
+            long delta = vote.getValue();
+
+            if (delta != (int) delta) {
+                throw new VoteRejectedException("Sum of votes for quote " + id + " is out of range");
+            }
+
+            //нулевая сумма не меняет рейтинг, существование цитаты проверяется по индексу в памяти
+            if (delta == 0) {
+                results.add(new VoteResultDto(id, 0, randomQuoteIndex.contains(id)));
+            } else {
+                deltasByShard.computeIfAbsent(quoteShards.shardOf(id), shard -> new ArrayList<>()).add(new int[]{id, (int) delta});
+            }
+        }
+
+        RuntimeException shardError = null;
+        boolean anyShardApplied = false;
+
+        for (Map.Entry<Integer, List<int[]>> shardDeltas : deltasByShard.entrySet()) {
+            List<int[]> deltas = shardDeltas.getValue();
+            List<VoteResultDto> shardResults = new ArrayList<>(deltas.size());
+
+            try {
+                quoteShards.writeToShard(shardDeltas.getKey(), () -> applyVotes(deltas, shardResults));
+            } catch (DataAccessException | TransactionException e) {
+                //без шардов пакет записывается одной транзакцией: ошибка означает, что не записано ничего
+                if (!quoteShards.isEnabled()) {
+                    throw e;
+                }
+
+                log.warn("Votes for shard {} are not applied", shardDeltas.getKey(), e);
+                shardError = e;
+                for (int[] delta : deltas) {
+                    results.add(new VoteResultDto(delta[0], 0, false, true));
+                }
+                continue;
+            }
+
+            //результаты шарда попадают в ответ только после коммита его транзакции
+            results.addAll(shardResults);
+            anyShardApplied = true;
+        }
+
+        if (shardError != null && !anyShardApplied) {
+            throw shardError;
+        }
+
+        results.sort(Comparator.comparingInt(VoteResultDto::getId));
+        return results;
     }
 
-    //получить топ 10 цитат с наилучшими оценками из БД
-    public List<Quote> findTopTen() {
-        return quotesRepository.findTop10ByOrderByVotesDesc();
+    //получить топ 10 цитат с наилучшими оценками (из рейтинга в памяти)
+    public List<QuoteDto> findTopTen() {
+        return leaderboard.top(10);
     }
 
-    //получить топ 10 цитат с наихудшими оценками из БД
-    public List<Quote> findWorstTen() {
-        return quotesRepository.findTop10ByOrderByVotesAsc();
+    //получить топ 10 цитат с наихудшими оценками (из рейтинга в памяти)
+    public List<QuoteDto> findWorstTen() {
+        return leaderboard.worst(10);
+    }
+
+    //получить n цитат с наилучшими оценками, n ограничено настройкой quotes.leaderboard.max-size
+    public List<QuoteDto> findTop(int n) {
+        return leaderboard.top(limitLeaderboardSize(n));
+    }
+
+    //получить n цитат с наихудшими оценками, n ограничено настройкой quotes.leaderboard.max-size
+    public List<QuoteDto> findWorst(int n) {
+        return leaderboard.worst(limitLeaderboardSize(n));
+    }
+
+    //получить n цитат с наибольшей суммой голосов за окно (из счетчиков в памяти),
+    //n ограничено настройкой quotes.leaderboard.max-size
+    public List<TrendingQuoteDto> findTrending(TrendingWindow window, int n) {
+        return trendingQuotes.find(window, limitLeaderboardSize(n));
+    }
+
+    //версия рейтинга цитат, меняется при любом изменении списков лучших и худших цитат
+    public long getLeaderboardVersion() {
+        return leaderboard.getVersion();
     }
 
     //удалить конкретную цитату из БД по id
     @Transactional
     public void delete(int id) {
+        quoteShards.useShardOf(id);
         quotesRepository.deleteById(id);
+        eventPublisher.publishEvent(new QuoteDeletedEvent(id));
+    }
+
+    //получить цитату по id, выбранному из индекса в памяти
+    private QuoteDto findSampledQuote(IntSupplier sampler) {
+
+        for (int attempt = 0; attempt < RANDOM_QUOTE_ATTEMPTS; attempt++) {
+            //выбираем случайный id из индекса в памяти и получаем цитату по первичному ключу
+            int id = sampler.getAsInt();
+
+            if (id == RandomQuoteIndex.NONE) {
+                break;
+            }
+
+            //цитата могла быть удалена между выбором id и запросом - тогда пробуем еще раз
+            Optional<QuoteDto> randomQuote = quoteShards.readFromShard(quoteShards.shardOf(id), () -> quotesRepository.findDtoById(id));
+
+            if (randomQuote.isPresent()) {
+                applyPendingVotes(randomQuote.get());
+                return randomQuote.get();
+            }
+        }
+
+        throw new QuoteNotFoundException("There are no quotes yet");
+    }
+
+    //применить суммы голосов одного шарда в текущей транзакции и опубликовать фактические изменения рейтинга
+    //в результат попадает фактическое изменение рейтинга: сумма, упершаяся в ноль, дает меньшее по модулю значение
+    private void applyVotes(List<int[]> deltas, List<VoteResultDto> results) {
+        Map<Integer, Integer> applied = quoteVotesBatchRepository.applyVotes(deltas);
+
+        for (int[] delta : deltas) {
+            Integer change = applied.get(delta[0]);
+            results.add(new VoteResultDto(delta[0], change != null ? change : 0, change != null));
+
+            //сумма, которая уперлась в ноль, рейтинг не меняет
+            if (change != null && change != 0) {
+                eventPublisher.publishEvent(new QuoteVotedEvent(delta[0], change));
+            }
+        }
+    }
+
+    private void checkAnonymousVotesEnabled() {
+        if (!anonymousVotesEnabled) {
+            throw new VoteRejectedException("Voting requires userEmail and userPassword");
+        }
+    }
+
+    //голос пользователя учитывается не больше одного раза на цитату, смена направления отменяет прежний голос
+    //такие голоса записываются в БД сразу, минуя накопитель: чтобы отменить голос "против", нужно знать в той же
+    //транзакции, изменил ли он рейтинг, а строка quote_vote все равно пишется в БД
+    private void voteAsUser(int id, User voter, int direction) {
+
+        //без цитаты строка голоса не может быть записана, проверка по индексу в памяти
+        if (!randomQuoteIndex.contains(id)) {
+            throw new QuoteNotFoundException("Quote with this ID is not found");
+        }
+
+        User actualUser = checkCredentialsAndReturnUserFromDb(voter);
+        quoteVoters.vote(id, actualUser.getId(), direction, (voteDirection, count) -> applyVotesNow(id, voteDirection, count));
+    }
+
+    private void applyUpvote(int id) {
+
+        if (voteAggregator.isEnabled() && recordPendingVote(id, 1)) {
+            eventPublisher.publishEvent(new QuoteVotedEvent(id, 1, true));
+            return;
+        }
+
+        applyVotesNow(id, 1, 1);
+    }
+
+    private void applyDownvote(int id) {
+
+        if (voteAggregator.isEnabled() && recordPendingVote(id, -1)) {
+            eventPublisher.publishEvent(new QuoteVotedEvent(id, -1, true));
+            return;
+        }
+
+        applyVotesNow(id, -1, 1);
+    }
+
+    //изменить рейтинг в БД на count голосов в направлении direction, каждый голос - один запрос UPDATE
+    //возвращает количество голосов, изменивших рейтинг: голос "против" не уменьшает нулевой рейтинг
+    private int applyVotesNow(int id, int direction, int count) {
+        int applied = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (direction > 0) {
+                if (quotesRepository.incrementVotes(id) == 0) {
+                    throw new QuoteNotFoundException("Quote with this ID is not found");
+                }
+                applied++;
+            } else if (quotesRepository.decrementVotes(id) == 1) {
+                applied++;
+            } else if (!quotesRepository.existsById(id)) {
+                //ни одна строка не изменилась и цитаты нет (иначе ее рейтинг уже равен нулю)
+                throw new QuoteNotFoundException("Quote with this ID is not found");
+            } else {
+                //рейтинг равен нулю - остальные голоса "против" его тоже не изменят
+                break;
+            }
+        }
+
+        if (applied > 0) {
+            eventPublisher.publishEvent(new QuoteVotedEvent(id, direction * applied));
+        }
+
+        return applied;
+    }
+
+    private int limitLeaderboardSize(int n) {
+        return Math.max(1, Math.min(n, leaderboard.getMaxSize()));
+    }
+
+    //учесть голос в накопителе, не записывая его в БД сразу
+    //возвращает false, если накопитель переполнен и голос нужно записать в БД обычным способом
+    private boolean recordPendingVote(int id, int delta) {
+
+        if (!randomQuoteIndex.contains(id)) {
+            throw new QuoteNotFoundException("Quote with this ID is not found");
+        }
+
+        return voteAggregator.record(id, delta);
+    }
+
+    //добавить к рейтингу цитаты голоса, которые накоплены в памяти, но еще не записаны в БД
+    private void applyPendingVotes(QuoteDto quoteDto) {
+        int delta = voteAggregator.pendingDelta(quoteDto.getId());
+
+        if (delta != 0) {
+            quoteDto.setVotes(VoteAggregator.effectiveVotes(quoteDto.getVotes(), delta));
+        }
     }
 
     //Добавить недостающие данные в объект новой цитаты, пришедшей от клиента (полные данные пользователя и дату создания)
     private void enrichNewQuoteData(Quote quote) {
 
-        User actualUser = checkCredentialsAndReturnUserFromDb(quote);
+        User actualUser = checkCredentialsAndReturnUserFromDb(quote.getUser());
         quote.setUser(actualUser);
 
         quote.setDateOfCreation(new Date());
@@ -125,22 +560,20 @@ public class QuotesService {
 
     //проверить корректность данных о пользователе, которые клиент указал при создании/модификации цитаты (email и пароль)
     //если данные верны - вернуть соответсвтующий объект User из БД
-    private User checkCredentialsAndReturnUserFromDb(Quote quote) {
+    private User checkCredentialsAndReturnUserFromDb(User specifiedByClientUser) {
 
-        User specifiedByClientUser = quote.getUser();
+        Optional<User> actualUser = usersService.findByEmail(specifiedByClientUser.getEmail());
 
-        User actualUser = usersService.findByEmail(specifiedByClientUser.getEmail())
-                .orElseThrow(() -> new QuoteNotSavedException("User with this email is not found"));
+        if (actualUser.isEmpty()) {
+            quotesMetrics.credentialsRejected();
+            throw new QuoteNotSavedException("User with this email is not found");
+        }
 
-        if (!actualUser.getPassword().equals(specifiedByClientUser.getPassword())) {
+        if (!actualUser.get().getPassword().equals(specifiedByClientUser.getPassword())) {
+            quotesMetrics.credentialsRejected();
             throw new QuoteNotSavedException("Incorrect password");
         }
 
-        return actualUser;
+        return actualUser.get();
     }
-
-
-
-
-
 }
@@ -0,0 +1,179 @@
+package smileksey.quotesapp.services;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.events.QuoteSavedEvent;
+import smileksey.quotesapp.repositories.QuotesRepository;
+import smileksey.quotesapp.util.IntIntMap;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+//индекс id всех существующих цитат для выбора случайной цитаты за O(1)
+//id хранятся в плотном массиве int[], позиция каждого id - в хеш-таблице IntIntMap,
+//поэтому удаление выполняется за O(1) переносом последнего элемента на место удаляемого,
+//а память зависит от количества цитат, а не от наибольшего id
+//сохранение цитаты, пришедшее после ее удаления (события не в порядке коммитов), не возвращает id в индекс (DeletedQuotes)
+@Component
+public class RandomQuoteIndex {
+
+    //значение, которое возвращает sample(), если цитат нет
+    public static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final QuotesRepository quotesRepository;
+    private final QuoteShards quoteShards;
+    private final DeletedQuotes deletedQuotes;
+
+    //чтение выполняется без блокировки (optimistic read), запись - под эксклюзивной блокировкой
+    private final StampedLock lock = new StampedLock();
+    //id цитат, занятые ячейки - [0, size)
+    private int[] ids = new int[INITIAL_CAPACITY];
+    //id -> позиция id в массиве ids плюс один, 0 - цитаты с таким id нет
+    private final IntIntMap positions = new IntIntMap(INITIAL_CAPACITY);
+    private volatile int size;
+
+    @Autowired
+    public RandomQuoteIndex(QuotesRepository quotesRepository, QuoteShards quoteShards, DeletedQuotes deletedQuotes) {
+        this.quotesRepository = quotesRepository;
+        this.quoteShards = quoteShards;
+        this.deletedQuotes = deletedQuotes;
+    }
+
+    //загрузить id всех цитат из БД
+    @PostConstruct
+    public void reload() {
+        long stamp = lock.writeLock();
+        try {
+            positions.clear();
+            size = 0;
+
+            //цитаты загружаются из всех шардов
+            quoteShards.loadFromEachShard(() -> {
+                try (Stream<Integer> allIds = quotesRepository.streamAllIds()) {
+                    allIds.forEach(this::addLocked);
+                }
+            });
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //получить id случайной цитаты или NONE, если цитат нет
+    public int sample() {
+        long stamp = lock.tryOptimisticRead();
+        int id = sample(ids, size);
+
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                id = sample(ids, size);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return id;
+    }
+
+    //есть ли цитата с таким id
+    public boolean contains(int id) {
+        long stamp = lock.tryOptimisticRead();
+        boolean contains = positions.get(id) != 0;
+
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                contains = positions.get(id) != 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return contains;
+    }
+
+    //количество цитат в индексе
+    public int size() {
+        return size;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteSaved(QuoteSavedEvent event) {
+        int id = event.getQuote().getId();
+
+        long stamp = lock.writeLock();
+        try {
+            if (!deletedQuotes.contains(id)) {
+                addLocked(id);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteDeleted(QuoteDeletedEvent event) {
+        //отметка ставится до удаления: сохранение, которое придет позже, ее увидит
+        deletedQuotes.add(event.getId());
+        remove(event.getId());
+    }
+
+    //добавить id в индекс, повторное добавление ничего не меняет
+    public void add(int id) {
+        long stamp = lock.writeLock();
+        try {
+            addLocked(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //удалить id из индекса
+    public void remove(int id) {
+        long stamp = lock.writeLock();
+        try {
+            int index = positions.get(id) - 1;
+
+            if (index < 0) {
+                return;
+            }
+
+            int last = ids[size - 1];
+
+            ids[index] = last;
+            positions.put(last, index + 1);
+            positions.remove(id);
+            size--;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void addLocked(int id) {
+        if (positions.get(id) != 0) {
+            return;
+        }
+
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length + (ids.length >> 1));
+        }
+
+        ids[size] = id;
+        positions.put(id, size + 1);
+        size++;
+    }
+
+    //при optimistic read массив и размер могут быть несогласованы, поэтому индекс ограничивается длиной массива,
+    //а результат отбрасывается, если validate() не прошел
+    private static int sample(int[] ids, int size) {
+        int bound = Math.min(size, ids.length);
+        return bound == 0 ? NONE : ids[ThreadLocalRandom.current().nextInt(bound)];
+    }
+}
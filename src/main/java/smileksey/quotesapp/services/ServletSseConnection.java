@@ -0,0 +1,99 @@
+package smileksey.quotesapp.services;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+//SSE-соединение поверх асинхронного запроса с неблокирующей записью (Servlet WriteListener):
+//write() только передает данные контейнеру, и поток не ждет клиента, который перестал их читать
+final class ServletSseConnection implements SseConnection, WriteListener, AsyncListener {
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream out;
+    private volatile Runnable onWritable = () -> {
+    };
+    private volatile Runnable onClosed = () -> {
+    };
+
+    ServletSseConnection(HttpServletRequest request, HttpServletResponse response, long timeoutMs) throws IOException {
+        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+        asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(timeoutMs);
+        out = response.getOutputStream();
+    }
+
+    @Override
+    public void start(Runnable onWritable, Runnable onClosed) {
+        this.onWritable = onWritable;
+        this.onClosed = onClosed;
+        asyncContext.addListener(this);
+        //контейнер вызовет onWritePossible, как только в соединение можно будет писать
+        out.setWriteListener(this);
+    }
+
+    @Override
+    public boolean isReady() {
+        return out.isReady();
+    }
+
+    //данные отправляются сразу; если клиент их еще не принял, isReady() вернет false до следующего onWritePossible
+    @Override
+    public void write(byte[] message) throws IOException {
+        out.write(message);
+        if (out.isReady()) {
+            out.flush();
+        }
+    }
+
+    //complete() только передает закрытие контейнеру и не ждет отправки оставшихся данных
+    @Override
+    public void close() {
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            //соединение уже закрыто
+        }
+    }
+
+    @Override
+    public void onWritePossible() {
+        onWritable.run();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        onClosed.run();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        onClosed.run();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        onClosed.run();
+        close();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        onClosed.run();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+}
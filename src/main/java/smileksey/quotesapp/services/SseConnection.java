@@ -0,0 +1,20 @@
+package smileksey.quotesapp.services;
+
+import java.io.IOException;
+
+//соединение подписчика LeaderboardStream, в которое сообщения пишутся без блокировки потока
+interface SseConnection {
+
+    //начать обслуживание: onWritable вызывается, когда соединение снова готово принимать данные,
+    //onClosed - когда соединение закрыто клиентом, по таймауту или с ошибкой
+    void start(Runnable onWritable, Runnable onClosed);
+
+    //можно ли писать; false - клиент еще не принял записанные ранее данные, о готовности сообщит onWritable
+    boolean isReady();
+
+    //записать сообщение целиком; вызывается только после isReady() == true и не ждет отправки данных клиенту
+    void write(byte[] message) throws IOException;
+
+    //закрыть соединение, не дожидаясь отправки данных
+    void close();
+}
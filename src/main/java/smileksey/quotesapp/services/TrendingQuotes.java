@@ -0,0 +1,326 @@
+package smileksey.quotesapp.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.dto.TrendingQuoteDto;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.events.QuoteVotedEvent;
+import smileksey.quotesapp.util.TrendingWindow;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+//популярные сейчас цитаты: сумма голосов "за" и "против" за последний час, сутки или неделю
+//для каждой цитаты, за которую голосовали, хранятся кольцевые буферы счетчиков: 60 поминутных и 168 почасовых;
+//устаревшие ячейки обнуляются при следующем обращении к счетчику, поэтому запросы к БД не нужны
+//поминутный буфер освобождается через час без голосов, а вся запись - через неделю, так что память занимают
+//только цитаты, за которые недавно голосовали; счетчики не сохраняются в БД и после перезапуска начинаются с нуля
+//голос, пришедший после удаления цитаты (события не в порядке коммитов), не создает счетчик заново (DeletedQuotes)
+@Component
+public class TrendingQuotes {
+
+    private static final Logger log = LoggerFactory.getLogger(TrendingQuotes.class);
+
+    private static final int MINUTES = 60;
+    private static final int HOURS = 7 * 24;
+    private static final int DAY_HOURS = 24;
+
+    //сначала больше голосов за окно, при равенстве - меньший id
+    private static final Comparator<Scored> SCORE_ORDER = Comparator.comparingInt((Scored scored) -> scored.votes).reversed()
+            .thenComparingInt(scored -> scored.id);
+
+    private final QuotesLeaderboard leaderboard;
+    private final DeletedQuotes deletedQuotes;
+    private final long refreshNanos;
+    private final long compactionIntervalMs;
+    //текущее время в минутах, отдельная функция нужна для тестов
+    private final LongSupplier clock;
+
+    //id цитаты -> счетчики голосов
+    private final Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+    //последний рассчитанный список для каждого окна
+    private final Map<TrendingWindow, Ranking> rankings = new EnumMap<>(TrendingWindow.class);
+
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public TrendingQuotes(QuotesLeaderboard leaderboard, DeletedQuotes deletedQuotes,
+                          @Value("${quotes.trending.refresh:5s}") Duration refresh,
+                          @Value("${quotes.trending.compaction-interval:1m}") Duration compactionInterval) {
+        this(leaderboard, deletedQuotes, refresh, compactionInterval, () -> TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis()));
+    }
+
+    TrendingQuotes(QuotesLeaderboard leaderboard, DeletedQuotes deletedQuotes, Duration refresh, Duration compactionInterval,
+                   LongSupplier clock) {
+        this.leaderboard = leaderboard;
+        this.deletedQuotes = deletedQuotes;
+        this.refreshNanos = refresh.toNanos();
+        this.compactionIntervalMs = compactionInterval.toMillis();
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "trending-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::compactSafely, compactionIntervalMs, compactionIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    //получить n цитат с наибольшей суммой голосов за окно, в список попадают только цитаты с положительной суммой
+    //n ограничено настройкой quotes.leaderboard.max-size; список пересчитывается не чаще раза в quotes.trending.refresh
+    public List<TrendingQuoteDto> find(TrendingWindow window, int n) {
+        List<Scored> ranked = ranking(window).quotes;
+        List<TrendingQuoteDto> quotes = new ArrayList<>(Math.min(n, ranked.size()));
+
+        for (Scored scored : ranked) {
+            if (quotes.size() == n) {
+                break;
+            }
+
+            //данные цитаты берутся из рейтинга в памяти; удаленные после расчета списка цитаты пропускаются
+            Optional<QuoteDto> quoteDto = leaderboard.find(scored.id);
+            quoteDto.ifPresent(quote -> quotes.add(new TrendingQuoteDto(quote, scored.votes)));
+        }
+
+        return quotes;
+    }
+
+    //количество цитат, для которых хранятся счетчики
+    public int size() {
+        return counters.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteVoted(QuoteVotedEvent event) {
+        record(event.getId(), event.getDelta());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteDeleted(QuoteDeletedEvent event) {
+        //отметка ставится до удаления: голос, который придет позже, ее увидит
+        deletedQuotes.add(event.getId());
+        Counter counter = counters.remove(event.getId());
+        if (counter != null) {
+            counter.remove();
+        }
+    }
+
+    //учесть голос в счетчиках цитаты
+    void record(int id, int delta) {
+        long minute = clock.getAsLong();
+
+        //счетчик мог быть удален сжатием между получением и записью - тогда создается новый
+        while (!deletedQuotes.contains(id)) {
+            Counter counter = counters.computeIfAbsent(id, key -> new Counter(minute));
+            if (counter.add(minute, delta)) {
+                //цитату удалили, пока создавался счетчик: ее удаление могло уже пройти, поэтому счетчик удаляется здесь
+                if (deletedQuotes.contains(id)) {
+                    counters.remove(id, counter);
+                    counter.remove();
+                }
+                return;
+            }
+            counters.remove(id, counter);
+        }
+    }
+
+    //обнулить устаревшие ячейки, освободить поминутные буферы неактивных цитат и удалить счетчики,
+    //за которые не голосовали дольше недели
+    void compact() {
+        long minute = clock.getAsLong();
+        counters.forEach((id, counter) -> {
+            if (counter.compact(minute)) {
+                counters.remove(id, counter);
+            }
+        });
+    }
+
+    private void compactSafely() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.error("Failed to compact trending vote counters", e);
+        }
+    }
+
+    //вернуть список окна, пересчитав его, если он устарел
+    private Ranking ranking(TrendingWindow window) {
+        synchronized (rankings) {
+            Ranking ranking = rankings.get(window);
+            long now = System.nanoTime();
+
+            if (ranking == null || now - ranking.computedAt >= refreshNanos) {
+                ranking = new Ranking(now, rank(window, leaderboard.getMaxSize()));
+                rankings.put(window, ranking);
+            }
+
+            return ranking;
+        }
+    }
+
+    //k цитат с наибольшей положительной суммой голосов за окно: куча из k элементов, O(m log k) для m счетчиков
+    private List<Scored> rank(TrendingWindow window, int k) {
+        long minute = clock.getAsLong();
+        PriorityQueue<Scored> heap = new PriorityQueue<>(k + 1, SCORE_ORDER.reversed());
+
+        counters.forEach((id, counter) -> {
+            int votes = counter.sum(window, minute);
+            if (votes <= 0) {
+                return;
+            }
+
+            heap.add(new Scored(id, votes));
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        });
+
+        List<Scored> ranked = new ArrayList<>(heap);
+        ranked.sort(SCORE_ORDER);
+        return Collections.unmodifiableList(ranked);
+    }
+
+    //рассчитанный список и момент расчета
+    private static final class Ranking {
+        private final long computedAt;
+        private final List<Scored> quotes;
+
+        private Ranking(long computedAt, List<Scored> quotes) {
+            this.computedAt = computedAt;
+            this.quotes = quotes;
+        }
+    }
+
+    //id цитаты и сумма голосов за окно
+    private static final class Scored {
+        private final int id;
+        private final int votes;
+
+        private Scored(int id, int votes) {
+            this.id = id;
+            this.votes = votes;
+        }
+    }
+
+    //счетчики голосов одной цитаты
+    //ячейка буфера для минуты (часа) t - t % размер буфера; при переходе к следующей минуте ячейки, которые
+    //она пропустила, обнуляются, поэтому в буфере всегда только последние 60 минут и 168 часов
+    private static final class Counter {
+        //null, если за цитату не голосовали больше часа
+        private int[] minutes;
+        private final int[] hours = new int[HOURS];
+        //минута, до которой обнулены устаревшие ячейки
+        private long currentMinute;
+        private long lastVoteMinute;
+        //счетчик удален из таблицы, голоса нужно записать в новый
+        private boolean removed;
+
+        private Counter(long minute) {
+            this.currentMinute = minute;
+            this.lastVoteMinute = minute;
+        }
+
+        private synchronized boolean add(long minute, int delta) {
+            if (removed) {
+                return false;
+            }
+
+            advance(minute);
+            if (minutes == null) {
+                minutes = new int[MINUTES];
+            }
+
+            minutes[(int) (currentMinute % MINUTES)] += delta;
+            hours[(int) (currentMinute / 60 % HOURS)] += delta;
+            lastVoteMinute = currentMinute;
+            return true;
+        }
+
+        private synchronized int sum(TrendingWindow window, long minute) {
+            advance(minute);
+
+            return switch (window) {
+                case HOUR -> minutes == null ? 0 : sum(minutes, MINUTES, currentMinute, MINUTES);
+                case DAY -> sum(hours, HOURS, currentMinute / 60, DAY_HOURS);
+                case WEEK -> sum(hours, HOURS, currentMinute / 60, HOURS);
+            };
+        }
+
+        //вернуть true, если счетчик больше не нужен и удален
+        private synchronized boolean compact(long minute) {
+            advance(minute);
+
+            long idle = currentMinute - lastVoteMinute;
+            if (idle >= MINUTES) {
+                minutes = null;
+            }
+            if (idle >= HOURS * 60L) {
+                removed = true;
+            }
+
+            return removed;
+        }
+
+        private synchronized void remove() {
+            removed = true;
+        }
+
+        //перейти к минуте minute, обнулив ячейки пропущенных минут и часов
+        //если часы отстали назад, голоса записываются в последнюю известную минуту
+        private void advance(long minute) {
+            if (minute <= currentMinute) {
+                return;
+            }
+
+            if (minutes != null) {
+                clear(minutes, MINUTES, currentMinute, minute);
+            }
+            clear(hours, HOURS, currentMinute / 60, minute / 60);
+            currentMinute = minute;
+        }
+
+        //обнулить ячейки периодов (from, to]
+        private static void clear(int[] ring, int size, long from, long to) {
+            long steps = Math.min(to - from, size);
+            for (long i = 1; i <= steps; i++) {
+                ring[(int) ((from + i) % size)] = 0;
+            }
+        }
+
+        //сумма ячеек последних count периодов, заканчивая периодом current
+        private static int sum(int[] ring, int size, long current, int count) {
+            int total = 0;
+            for (int i = 0; i < count; i++) {
+                total += ring[(int) Math.floorMod(current - i, size)];
+            }
+            return total;
+        }
+    }
+}
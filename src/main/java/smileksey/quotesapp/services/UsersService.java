@@ -1,11 +1,16 @@
 package smileksey.quotesapp.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import smileksey.quotesapp.models.User;
 import smileksey.quotesapp.repositories.UsersRepository;
 
+import java.time.Duration;
 import java.util.Date;
 import java.util.Optional;
 
@@ -14,22 +19,74 @@ import java.util.Optional;
 public class UsersService {
 
     private final UsersRepository usersRepository;
+    private final QuoteShards quoteShards;
+    //кэш зарегистрированных пользователей по email, ограничен по размеру и времени жизни записи
+    //кэшируются только найденные пользователи, поэтому регистрация нового пользователя не требует сброса отсутствующих записей
+    private final Cache<String, User> usersByEmail;
 
     @Autowired
-    public UsersService(UsersRepository usersRepository) {
+    public UsersService(UsersRepository usersRepository, QuoteShards quoteShards,
+                        @Value("${quotes.users.cache.max-size:10000}") long cacheMaxSize,
+                        @Value("${quotes.users.cache.ttl:10m}") Duration cacheTtl) {
         this.usersRepository = usersRepository;
+        this.quoteShards = quoteShards;
+        this.usersByEmail = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
     }
 
     //сохранение нового пользователя в БД
+    //при разбиении цитат на шарды пользователь сохраняется в шарде 0 и копируется с тем же id во все остальные
+    //копии записываются в отдельных транзакциях до коммита шарда 0, поэтому при ошибке часть копий может остаться
+    //без пользователя в шарде 0; такие копии ни на что не ссылаются и заменяются при повторной регистрации:
+    //копия с тем же email и другим id удаляется, а копия с тем же id не вставляется второй раз
     @Transactional
     public void createUser(User user) {
         enrichUserData(user);
-        usersRepository.save(user);
+        //запись в шард 0 выполняется сразу: занятый email обнаруживается до того, как копии заменят чужие
+        usersRepository.saveAndFlush(user);
+
+        for (int shard = 1; shard < quoteShards.count(); shard++) {
+            quoteShards.writeToShard(shard, () -> {
+                usersRepository.deleteStaleCopy(user.getId(), user.getEmail());
+                usersRepository.insertCopy(user.getId(), user.getName(), user.getEmail(), user.getPassword(), user.getDateOfCreation());
+            });
+        }
+
+        evict(user.getEmail());
     }
 
-    //получить зарегестрированного пользователя из БД по email
+    //получить зарегестрированного пользователя по email (из кэша или из БД)
+    //из кэша возвращается копия, чтобы изменения объекта вызывающим кодом не попадали в кэш и в другие потоки
     public Optional<User> findByEmail(String email) {
-        return usersRepository.findByEmail(email);
+
+        User cachedUser = usersByEmail.getIfPresent(email);
+
+        if (cachedUser != null) {
+            return Optional.of(copyOf(cachedUser));
+        }
+
+        Optional<User> user = usersRepository.findByEmail(email);
+        user.ifPresent(actualUser -> usersByEmail.put(email, copyOf(actualUser)));
+
+        return user;
+    }
+
+    //удалить пользователя из кэша - вызывается при любом изменении данных пользователя
+    public void evict(String email) {
+        usersByEmail.invalidate(email);
+    }
+
+    //статистика кэша пользователей: попадания, промахи, вытеснения
+    public CacheStats getCacheStats() {
+        return usersByEmail.stats();
+    }
+
+    //количество пользователей в кэше
+    public long getCacheSize() {
+        return usersByEmail.estimatedSize();
     }
 
 
@@ -37,4 +94,11 @@ public class UsersService {
     private void enrichUserData(User user) {
         user.setDateOfCreation(new Date());
     }
+
+    //в кэше хранится копия, не связанная с persistence context
+    private User copyOf(User user) {
+        User copy = new User(user.getName(), user.getEmail(), user.getPassword(), user.getDateOfCreation());
+        copy.setId(user.getId());
+        return copy;
+    }
 }
@@ -0,0 +1,262 @@
+package smileksey.quotesapp.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import smileksey.quotesapp.events.QuoteVotesFlushedEvent;
+import smileksey.quotesapp.repositories.QuoteVotesBatchRepository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+//накопитель голосов в памяти (write-behind)
+//голоса суммируются по id цитаты и периодически записываются в БД одним JDBC batch
+//нижняя граница рейтинга (ноль) применяется к сумме накопленных голосов, а не к каждому голосу по отдельности
+@Component
+public class VoteAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(VoteAggregator.class);
+    private static final int CONSISTENT_READ_ATTEMPTS = 16;
+
+    private final QuoteVotesBatchRepository quoteVotesBatchRepository;
+    private final QuoteShards quoteShards;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final boolean enabled;
+    private final long flushIntervalMs;
+    private final int flushThreshold;
+    private final int maxPending;
+
+    //накопленные, но еще не записанные изменения рейтинга: id цитаты -> сумма голосов
+    //merge в ConcurrentHashMap блокирует только одну корзину таблицы, поэтому голоса за разные цитаты не мешают друг другу
+    private final Map<Integer, Integer> pending = new ConcurrentHashMap<>();
+    //изменения, которые прямо сейчас записываются в БД - учитываются при чтении, пока запись не завершится
+    private volatile Map<Integer, Integer> inFlight = Collections.emptyMap();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    //счетчик записей пакетов (seqlock): нечетное значение - пакет прямо сейчас переносится из pending в БД
+    private final AtomicLong flushSequence = new AtomicLong();
+
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public VoteAggregator(QuoteVotesBatchRepository quoteVotesBatchRepository, QuoteShards quoteShards,
+                          PlatformTransactionManager transactionManager,
+                          ApplicationEventPublisher eventPublisher,
+                          @Value("${quotes.votes.write-behind.enabled:false}") boolean enabled,
+                          @Value("${quotes.votes.write-behind.flush-interval-ms:1000}") long flushIntervalMs,
+                          @Value("${quotes.votes.write-behind.flush-threshold:1000}") int flushThreshold,
+                          @Value("${quotes.votes.write-behind.max-pending:100000}") int maxPending) {
+        this.quoteVotesBatchRepository = quoteVotesBatchRepository;
+        this.quoteShards = quoteShards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushThreshold = flushThreshold;
+        this.maxPending = maxPending;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vote-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    //при остановке приложения записать в БД все накопленные голоса
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(flushIntervalMs + 10_000, TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //учесть голос; возвращает false, если накопитель переполнен и голос нужно записать в БД сразу
+    public boolean record(int id, int delta) {
+
+        if (pending.size() >= maxPending && !pending.containsKey(id)) {
+            requestFlush();
+            return false;
+        }
+
+        pending.merge(id, delta, VoteAggregator::sumOrRemove);
+
+        if (pending.size() >= flushThreshold) {
+            requestFlush();
+        }
+
+        return true;
+    }
+
+    //получить сумму голосов за цитату, которые еще не записаны в БД
+    public int pendingDelta(int id) {
+        return pending.getOrDefault(id, 0) + inFlight.getOrDefault(id, 0);
+    }
+
+    //прочитать данные из БД и наложить на них незаписанные голоса (read) так, чтобы чтение не пересеклось с записью пакета
+    //пока пакет записывается, рейтинг в БД и суммы в pending/inFlight меняются не одновременно, поэтому чтение,
+    //во время которого шла запись пакета, повторяется; после нескольких попыток чтение ждет окончания записи
+    public <T> T readConsistently(Supplier<T> read) {
+        if (!enabled) {
+            return read.get();
+        }
+
+        for (int attempt = 0; attempt < CONSISTENT_READ_ATTEMPTS; attempt++) {
+            long sequence = flushSequence.get();
+
+            if ((sequence & 1) == 0) {
+                T result = read.get();
+                if (flushSequence.get() == sequence) {
+                    return result;
+                }
+            }
+
+            Thread.onSpinWait();
+        }
+
+        synchronized (this) {
+            return read.get();
+        }
+    }
+
+    //количество цитат с незаписанными голосами
+    public int pendingSize() {
+        return pending.size();
+    }
+
+    //записать накопленные голоса в БД одним пакетом
+    public synchronized void flush() {
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        flushSequence.incrementAndGet();
+        try {
+            flushPending();
+        } finally {
+            flushSequence.incrementAndGet();
+        }
+    }
+
+    private void flushPending() {
+
+        Map<Integer, Integer> drained = new HashMap<>();
+        //пакеты изменений по шардам цитат
+        Map<Integer, List<int[]>> deltasByShard = new TreeMap<>();
+
+        for (Integer id : pending.keySet()) {
+            Integer delta = pending.remove(id);
+            if (delta != null) {
+                drained.put(id, delta);
+                deltasByShard.computeIfAbsent(quoteShards.shardOf(id), shard -> new ArrayList<>()).add(new int[]{id, delta});
+            }
+        }
+
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        inFlight = drained;
+        Map<Integer, Integer> flushed = new HashMap<>();
+        Map<Integer, Integer> applied = new HashMap<>();
+        RuntimeException failure = null;
+
+        try {
+            for (Map.Entry<Integer, List<int[]>> shardDeltas : deltasByShard.entrySet()) {
+                List<int[]> deltas = shardDeltas.getValue();
+                try {
+                    applied.putAll(quoteShards.onShard(shardDeltas.getKey(),
+                            () -> transactionTemplate.execute(status -> quoteVotesBatchRepository.applyVotes(deltas))));
+                    deltas.forEach(delta -> flushed.put(delta[0], delta[1]));
+                } catch (RuntimeException e) {
+                    //вернуть голоса обратно, чтобы записать их при следующей попытке
+                    //возвращаются только голоса шарда, транзакция которого не завершилась, - остальные уже в БД
+                    deltas.forEach(delta -> pending.merge(delta[0], delta[1], VoteAggregator::sumOrRemove));
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+
+            //голоса уже в БД - закэшированный рейтинг этих цитат устарел, а рейтинг в памяти получает фактические изменения
+            if (!flushed.isEmpty()) {
+                eventPublisher.publishEvent(new QuoteVotesFlushedEvent(flushed, applied));
+            }
+        } finally {
+            inFlight = Collections.emptyMap();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void requestFlush() {
+        if (executor != null && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::flushSafely);
+            } catch (RejectedExecutionException e) {
+                //приложение останавливается - накопленные голоса запишет stop()
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private void flushSafely() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Failed to flush pending votes", e);
+        }
+    }
+
+    //рейтинг цитаты с учетом незаписанных голосов: нижняя граница применяется к сумме, как при записи пакета
+    public static int effectiveVotes(int storedVotes, int pendingDelta) {
+        return Math.max(0, storedVotes + pendingDelta);
+    }
+
+    //сложить изменения рейтинга; нулевая сумма удаляет запись из таблицы
+    private static Integer sumOrRemove(Integer a, Integer b) {
+        int sum = a + b;
+        return sum == 0 ? null : sum;
+    }
+}
@@ -0,0 +1,293 @@
+package smileksey.quotesapp.services;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import smileksey.quotesapp.dto.QuoteVotes;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.events.QuoteSavedEvent;
+import smileksey.quotesapp.events.QuoteVotedEvent;
+import smileksey.quotesapp.events.QuoteVotesFlushedEvent;
+import smileksey.quotesapp.repositories.QuotesRepository;
+import smileksey.quotesapp.util.IntIntMap;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+//выбор случайной цитаты с вероятностью, пропорциональной ее рейтингу
+//вес цитаты - votes + 1, чтобы цитаты с нулевым рейтингом тоже могли выпасть
+//веса хранятся в дереве Фенвика: изменение веса и выбор цитаты выполняются за O(log n) без выделения памяти
+//рейтинг считается так же, как в QuotesLeaderboard: рейтинг в БД плюс незаписанные голоса VoteAggregator;
+//так же обрабатываются и события не в порядке коммитов (DeletedQuotes, EarlyVotes)
+@Component
+public class WeightedQuoteSampler {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final QuotesRepository quotesRepository;
+    private final QuoteShards quoteShards;
+    private final DeletedQuotes deletedQuotes;
+
+    private final StampedLock lock = new StampedLock();
+    //capacity всегда степень двойки - это нужно для спуска по дереву при выборе
+    private int capacity = INITIAL_CAPACITY;
+    //дерево Фенвика по ячейкам, индексы с 1
+    private long[] tree = new long[INITIAL_CAPACITY + 1];
+    //рейтинг цитаты в ячейке в БД и сумма незаписанных голосов
+    private int[] storedVotes = new int[INITIAL_CAPACITY];
+    private int[] pendingDeltas = new int[INITIAL_CAPACITY];
+    //id цитаты в ячейке
+    private int[] slotIds = new int[INITIAL_CAPACITY];
+    //id -> номер ячейки цитаты плюс один, 0 - цитаты нет; хеш-таблица, чтобы память не зависела от наибольшего id
+    private final IntIntMap slots = new IntIntMap(INITIAL_CAPACITY);
+    //освободившиеся после удаления ячейки
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    //количество ячеек, которые хотя бы раз были заняты
+    private int usedSlots;
+    private long totalWeight;
+    //голоса за цитаты, событие сохранения которых еще не пришло
+    private final EarlyVotes earlyVotes = new EarlyVotes();
+
+    @Autowired
+    public WeightedQuoteSampler(QuotesRepository quotesRepository, QuoteShards quoteShards, DeletedQuotes deletedQuotes) {
+        this.quotesRepository = quotesRepository;
+        this.quoteShards = quoteShards;
+        this.deletedQuotes = deletedQuotes;
+    }
+
+    //загрузить id и рейтинг всех цитат из БД
+    @PostConstruct
+    public void reload() {
+        long stamp = lock.writeLock();
+        try {
+            capacity = INITIAL_CAPACITY;
+            tree = new long[INITIAL_CAPACITY + 1];
+            storedVotes = new int[INITIAL_CAPACITY];
+            pendingDeltas = new int[INITIAL_CAPACITY];
+            slotIds = new int[INITIAL_CAPACITY];
+            slots.clear();
+            freeCount = 0;
+            usedSlots = 0;
+            totalWeight = 0;
+            earlyVotes.clear();
+
+            //цитаты загружаются из всех шардов
+            quoteShards.loadFromEachShard(() -> {
+                try (Stream<QuoteVotes> allVotes = quotesRepository.streamAllVotes()) {
+                    allVotes.forEach(quote -> addLocked(quote.getId(), quote.getVotes()));
+                }
+            });
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //получить id случайной цитаты с учетом рейтинга или RandomQuoteIndex.NONE, если цитат нет
+    public int sample() {
+        long stamp = lock.tryOptimisticRead();
+        int id = sampleIn(tree, slotIds, capacity, totalWeight, -1);
+
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                id = sampleIn(tree, slotIds, capacity, totalWeight, -1);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return id;
+    }
+
+    //получить id цитаты, в вес которой попадает точка point из [0, totalWeight()) - для проверки дерева в тестах
+    int sampleAt(long point) {
+        long stamp = lock.readLock();
+        try {
+            return sampleIn(tree, slotIds, capacity, totalWeight, point);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //сумма весов всех цитат
+    long totalWeight() {
+        long stamp = lock.readLock();
+        try {
+            return totalWeight;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteSaved(QuoteSavedEvent event) {
+        long stamp = lock.writeLock();
+        try {
+            int id = event.getQuote().getId();
+
+            if (slots.get(id) == 0 && !deletedQuotes.contains(id)) {
+                EarlyVotes.Votes early = earlyVotes.take(id);
+                addLocked(id, event.getQuote().getVotes());
+                if (early != null) {
+                    int slot = slotOf(id);
+                    setVotesLocked(slot, storedVotes[slot] + early.getStoredDelta(), pendingDeltas[slot] + early.getPendingDelta());
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteDeleted(QuoteDeletedEvent event) {
+        //отметка ставится до удаления: сохранение, которое придет позже, ее увидит
+        deletedQuotes.add(event.getId());
+
+        long stamp = lock.writeLock();
+        try {
+            earlyVotes.take(event.getId());
+            int slot = slotOf(event.getId());
+
+            if (slot < 0) {
+                return;
+            }
+
+            addWeight(slot, -weight(storedVotes[slot], pendingDeltas[slot]));
+            storedVotes[slot] = 0;
+            pendingDeltas[slot] = 0;
+            slots.remove(event.getId());
+
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteVoted(QuoteVotedEvent event) {
+        long stamp = lock.writeLock();
+        try {
+            int delta = event.getDelta();
+            voteLocked(event.getId(), event.isPending() ? 0 : delta, event.isPending() ? delta : 0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //накопленные голоса записаны в БД: сумма переходит в рейтинг в БД с фактическим изменением после нижней границы
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuoteVotesFlushed(QuoteVotesFlushedEvent event) {
+        long stamp = lock.writeLock();
+        try {
+            event.getDeltas().forEach((id, delta) -> voteLocked(id, event.getApplied().getOrDefault(id, 0), -delta));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //изменить рейтинг в БД и сумму незаписанных голосов цитаты; если цитаты еще нет, голоса откладываются до ее появления
+    private void voteLocked(int id, int storedDelta, int pendingDelta) {
+        int slot = slotOf(id);
+
+        if (slot >= 0) {
+            setVotesLocked(slot, storedVotes[slot] + storedDelta, pendingDeltas[slot] + pendingDelta);
+        } else if (!deletedQuotes.contains(id)) {
+            earlyVotes.add(id, storedDelta, pendingDelta);
+        }
+    }
+
+    private void setVotesLocked(int slot, int stored, int pending) {
+        addWeight(slot, weight(stored, pending) - weight(storedVotes[slot], pendingDeltas[slot]));
+        storedVotes[slot] = stored;
+        pendingDeltas[slot] = pending;
+    }
+
+    //добавить цитату, уже известная цитата не меняется (рейтинг меняют только события голосования)
+    private void addLocked(int id, int quoteVotes) {
+        if (slots.get(id) != 0) {
+            return;
+        }
+
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (usedSlots == capacity) {
+                grow();
+            }
+            slot = usedSlots++;
+        }
+
+        slotIds[slot] = id;
+        slots.put(id, slot + 1);
+        storedVotes[slot] = quoteVotes;
+        pendingDeltas[slot] = 0;
+        addWeight(slot, weight(quoteVotes, 0));
+    }
+
+    //удвоить емкость и перестроить дерево за O(n)
+    private void grow() {
+        capacity *= 2;
+        storedVotes = Arrays.copyOf(storedVotes, capacity);
+        pendingDeltas = Arrays.copyOf(pendingDeltas, capacity);
+        slotIds = Arrays.copyOf(slotIds, capacity);
+        tree = new long[capacity + 1];
+
+        for (int slot = 0; slot < usedSlots; slot++) {
+            if (slots.get(slotIds[slot]) == slot + 1) {
+                tree[slot + 1] += weight(storedVotes[slot], pendingDeltas[slot]);
+            }
+            int parent = (slot + 1) + ((slot + 1) & -(slot + 1));
+            if (parent <= capacity) {
+                tree[parent] += tree[slot + 1];
+            }
+        }
+    }
+
+    private void addWeight(int slot, long delta) {
+        for (int i = slot + 1; i <= capacity; i += i & -i) {
+            tree[i] += delta;
+        }
+        totalWeight += delta;
+    }
+
+    private int slotOf(int id) {
+        return slots.get(id) - 1;
+    }
+
+    private static long weight(int stored, int pending) {
+        return VoteAggregator.effectiveVotes(stored, pending) + 1L;
+    }
+
+    //спуск по дереву Фенвика: найти ячейку, в которую попадает случайная точка из [0, totalWeight)
+    //(point < 0 - выбрать точку случайно)
+    //при optimistic read массивы могут быть несогласованы, поэтому индексы проверяются, а результат отбрасывается,
+    //если validate() не прошел
+    private static int sampleIn(long[] tree, int[] slotIds, int capacity, long totalWeight, long point) {
+        if (totalWeight <= 0 || tree.length != capacity + 1 || slotIds.length != capacity || point >= totalWeight) {
+            return RandomQuoteIndex.NONE;
+        }
+
+        if (point < 0) {
+            point = ThreadLocalRandom.current().nextLong(totalWeight);
+        }
+        int position = 0;
+
+        for (int step = capacity; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= capacity && tree[next] <= point) {
+                position = next;
+                point -= tree[next];
+            }
+        }
+
+        return position < capacity ? slotIds[position] : RandomQuoteIndex.NONE;
+    }
+}
@@ -0,0 +1,52 @@
+package smileksey.quotesapp.util;
+
+import java.util.Locale;
+
+//разбор заголовка Accept-Encoding (RFC 9110, 12.5.3): список кодировок с необязательным весом q
+//кодировка принимается, если ее вес больше 0; отдельная запись кодировки важнее записи "*"
+public class AcceptEncoding {
+
+    private AcceptEncoding() {
+    }
+
+    //принимает ли клиент ответ, сжатый gzip (x-gzip - прежнее название той же кодировки)
+    public static boolean acceptsGzip(String header) {
+        if (header == null) {
+            return false;
+        }
+
+        double gzip = -1;
+        double any = -1;
+
+        for (String entry : header.split(",")) {
+            int parameters = entry.indexOf(';');
+            String coding = (parameters < 0 ? entry : entry.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+            double weight = parameters < 0 ? 1 : weight(entry.substring(parameters + 1));
+
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = Math.max(gzip, weight);
+            } else if (coding.equals("*")) {
+                any = Math.max(any, weight);
+            }
+        }
+
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+
+    //вес q из параметров записи; без параметра q - 1, при неверном значении - 0 (запись не учитывается)
+    private static double weight(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            int equals = parameter.indexOf('=');
+            if (equals < 0 || !parameter.substring(0, equals).trim().equalsIgnoreCase("q")) {
+                continue;
+            }
+            try {
+                double q = Double.parseDouble(parameter.substring(equals + 1).trim());
+                return q >= 0 && q <= 1 ? q : 0;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+}
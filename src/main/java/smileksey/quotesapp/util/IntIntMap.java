@@ -0,0 +1,164 @@
+package smileksey.quotesapp.util;
+
+//хеш-таблица int -> int с открытой адресацией (линейное пробирование) без упаковки ключей и значений в Integer
+//в отличие от массива, индексированного ключом, занимаемая память зависит от количества ключей, а не от наибольшего ключа
+//ключи неотрицательные (id цитат), значения ненулевые: get() возвращает 0, если ключа нет
+//ключ и значение хранятся рядом в одном массиве, поэтому чтение без блокировки (optimistic read) всегда видит таблицу
+//одного размера, а число шагов поиска ограничено размером таблицы - поиск завершается и при одновременной записи,
+//результат такого чтения нужно проверить через validate()
+public class IntIntMap {
+
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private final int initialCapacity;
+    //table[2 * i] - ключ ячейки i или EMPTY, table[2 * i + 1] - значение
+    private int[] table;
+    private int size;
+
+    public IntIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    //expectedSize - количество ключей, при котором таблица еще не будет увеличиваться
+    public IntIntMap(int expectedSize) {
+        initialCapacity = capacityFor(expectedSize);
+        table = newTable(initialCapacity);
+    }
+
+    //значение по ключу или 0, если ключа нет
+    public int get(int key) {
+        if (key < 0) {
+            return 0;
+        }
+
+        int[] table = this.table;
+        int mask = (table.length >> 1) - 1;
+
+        for (int i = hash(key) & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            int current = table[2 * i];
+            if (current == key) {
+                return table[2 * i + 1];
+            }
+            if (current == EMPTY) {
+                return 0;
+            }
+        }
+
+        return 0;
+    }
+
+    //добавить ключ или заменить его значение
+    public void put(int key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Key must not be negative: " + key);
+        }
+
+        //таблица заполняется не больше чем на 3/4, иначе цепочки пробирования становятся длинными
+        if ((size + 1) * 4L > (table.length >> 1) * 3L) {
+            resize(capacity() * 2);
+        }
+
+        int mask = (table.length >> 1) - 1;
+        int i = hash(key) & mask;
+
+        while (table[2 * i] != EMPTY) {
+            if (table[2 * i] == key) {
+                table[2 * i + 1] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        table[2 * i + 1] = value;
+        table[2 * i] = key;
+        size++;
+    }
+
+    //удалить ключ; следующие ключи цепочки сдвигаются на освободившуюся ячейку, поэтому отметки удаления не нужны
+    public void remove(int key) {
+        if (key < 0) {
+            return;
+        }
+
+        int mask = (table.length >> 1) - 1;
+        int gap = hash(key) & mask;
+
+        while (table[2 * gap] != key) {
+            if (table[2 * gap] == EMPTY) {
+                return;
+            }
+            gap = (gap + 1) & mask;
+        }
+
+        for (int i = (gap + 1) & mask; table[2 * i] != EMPTY; i = (i + 1) & mask) {
+            int home = hash(table[2 * i]) & mask;
+
+            //ключ переносится, если его исходная ячейка не лежит между освободившейся ячейкой и текущей
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                table[2 * gap] = table[2 * i];
+                table[2 * gap + 1] = table[2 * i + 1];
+                gap = i;
+            }
+        }
+
+        table[2 * gap] = EMPTY;
+        table[2 * gap + 1] = 0;
+        size--;
+    }
+
+    //удалить все ключи и вернуть таблицу к начальному размеру
+    public void clear() {
+        table = newTable(initialCapacity);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    //количество ячеек таблицы (для оценки занимаемой памяти: 8 байт на ячейку)
+    public int capacity() {
+        return table.length >> 1;
+    }
+
+    //новая таблица заполняется целиком и только затем заменяет старую
+    private void resize(int newCapacity) {
+        int[] old = table;
+        int[] resized = newTable(newCapacity);
+        int mask = newCapacity - 1;
+
+        for (int j = 0; j < old.length; j += 2) {
+            if (old[j] != EMPTY) {
+                int i = hash(old[j]) & mask;
+                while (resized[2 * i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                resized[2 * i] = old[j];
+                resized[2 * i + 1] = old[j + 1];
+            }
+        }
+
+        table = resized;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = Math.max(MIN_CAPACITY, (expectedSize * 4L + 2) / 3);
+        return (int) Math.min(1 << 30, Long.highestOneBit(needed - 1) << 1);
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity * 2];
+        for (int i = 0; i < table.length; i += 2) {
+            table[i] = EMPTY;
+        }
+        return table;
+    }
+
+    //id цитат одного шарда идут с шагом, равным количеству шардов (см. ShardedQuoteIdGenerator),
+    //поэтому биты перемешиваются, чтобы id не попадали только в часть ячеек
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,69 @@
+package smileksey.quotesapp.util;
+
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.exceptions.InvalidPageRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+//непрозрачный курсор для постраничного вывода цитат (keyset pagination)
+//хранит сортировку и ключ последней цитаты страницы: значение поля сортировки и id
+public class QuotesCursor {
+
+    //ключ цитаты без даты создания (такие цитаты идут в конце списка по дате)
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final char SEPARATOR = ':';
+
+    private final QuotesSort sort;
+    private final long key;
+    private final int id;
+
+    private QuotesCursor(QuotesSort sort, long key, int id) {
+        this.sort = sort;
+        this.key = key;
+        this.id = id;
+    }
+
+    //курсор, указывающий на позицию после последней цитаты страницы
+    public static QuotesCursor after(QuotesSort sort, QuoteDto last) {
+        long key = switch (sort) {
+            case ID -> last.getId();
+            case VOTES -> last.getVotes();
+            case CREATED -> last.getDateOfCreation() == null ? NO_DATE : last.getDateOfCreation().getTime();
+        };
+        return new QuotesCursor(sort, key, last.getId());
+    }
+
+    //разобрать курсор, полученный от клиента; курсор должен быть выдан для той же сортировки
+    public static QuotesCursor decode(String token, QuotesSort sort) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(String.valueOf(SEPARATOR));
+
+            if (parts.length != 3 || !parts[0].equals(sort.name())) {
+                throw new InvalidPageRequestException("Cursor does not match sort '" + sort.name().toLowerCase() + "'");
+            }
+
+            return new QuotesCursor(sort, Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPageRequestException("Cursor is not valid");
+        }
+    }
+
+    public String encode() {
+        String value = sort.name() + SEPARATOR + key + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public QuotesSort getSort() {
+        return sort;
+    }
+
+    public long getKey() {
+        return key;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,37 @@
+package smileksey.quotesapp.util;
+
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.exceptions.InvalidPageRequestException;
+
+import java.util.Comparator;
+
+//варианты сортировки списка цитат
+public enum QuotesSort {
+    //по возрастанию id
+    ID(Comparator.comparingInt(QuoteDto::getId)),
+    //по убыванию рейтинга, при равном рейтинге - по возрастанию id
+    VOTES(Comparator.comparingInt(QuoteDto::getVotes).reversed().thenComparingInt(QuoteDto::getId)),
+    //сначала новые: по убыванию даты создания, при равной дате - по убыванию id; цитаты без даты - в конце
+    CREATED(Comparator.comparing(QuoteDto::getDateOfCreation, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparingInt(QuoteDto::getId).reversed());
+
+    private final Comparator<QuoteDto> order;
+
+    QuotesSort(Comparator<QuoteDto> order) {
+        this.order = order;
+    }
+
+    //порядок цитат в списке - тот же, что и в запросах к БД (нужен для слияния страниц из нескольких шардов)
+    public Comparator<QuoteDto> order() {
+        return order;
+    }
+
+    public static QuotesSort parse(String value) {
+        for (QuotesSort sort : values()) {
+            if (sort.name().equalsIgnoreCase(value)) {
+                return sort;
+            }
+        }
+        throw new InvalidPageRequestException("Unknown sort '" + value + "'. Use one of: id, votes, created");
+    }
+}
@@ -0,0 +1,28 @@
+package smileksey.quotesapp.util;
+
+import smileksey.quotesapp.exceptions.InvalidTrendingWindowException;
+
+//окно, за которое считаются голоса в списке популярных сейчас цитат
+public enum TrendingWindow {
+    //последний час, по минутам
+    HOUR("1h"),
+    //последние сутки, по часам
+    DAY("24h"),
+    //последняя неделя, по часам
+    WEEK("7d");
+
+    private final String value;
+
+    TrendingWindow(String value) {
+        this.value = value;
+    }
+
+    public static TrendingWindow parse(String value) {
+        for (TrendingWindow window : values()) {
+            if (window.value.equalsIgnoreCase(value)) {
+                return window;
+            }
+        }
+        throw new InvalidTrendingWindowException("Unknown window '" + value + "'. Use one of: 1h, 24h, 7d");
+    }
+}
@@ -6,12 +6,36 @@ CREATE TABLE service_user (
                         date_of_creation date
 );
 
+-- для существующей БД: ALTER TABLE quote ALTER COLUMN date_of_update TYPE timestamp;
+-- шаг последовательности должен совпадать с allocationSize в Quote
+-- для существующей БД: CREATE SEQUENCE quote_id_seq START WITH <max(id) + 1> INCREMENT BY 50;
+--                      ALTER TABLE quote ALTER COLUMN id DROP IDENTITY;
+CREATE SEQUENCE quote_id_seq START WITH 1 INCREMENT BY 50;
+
 CREATE TABLE quote (
-                       id int GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                       id int PRIMARY KEY,
                        content varchar NOT NULL,
                        date_of_creation date,
-                       date_of_update date,
+                       date_of_update timestamp,
                        user_id int REFERENCES service_user(id) ON DELETE CASCADE,
                        votes int default 0
 );
 
+-- индексы для постраничного вывода цитат (keyset pagination)
+CREATE INDEX quote_votes_id_idx ON quote (votes DESC, id);
+-- цитаты без даты создания идут в конце списка по дате (NULLS LAST, как в запросе страницы)
+CREATE INDEX quote_date_of_creation_id_idx ON quote (date_of_creation DESC NULLS LAST, id DESC);
+-- для существующей БД: DROP INDEX quote_date_of_creation_id_idx; и создать индекс заново
+
+-- голоса пользователей: не больше одного голоса пользователя за цитату, direction - 1 ("за") или -1 ("против")
+-- effect - на сколько голоса пользователя изменили рейтинг (-1, 0 или 1): голос "против" не уменьшает нулевой рейтинг,
+-- и при смене направления отменяется только то, что голос действительно изменил
+-- для существующей БД: ALTER TABLE quote_vote ADD COLUMN effect smallint; UPDATE quote_vote SET effect = direction;
+--                      ALTER TABLE quote_vote ALTER COLUMN effect SET NOT NULL;
+CREATE TABLE quote_vote (
+                       quote_id int REFERENCES quote(id) ON DELETE CASCADE,
+                       user_id int REFERENCES service_user(id) ON DELETE CASCADE,
+                       direction smallint NOT NULL,
+                       effect smallint NOT NULL,
+                       PRIMARY KEY (quote_id, user_id)
+);
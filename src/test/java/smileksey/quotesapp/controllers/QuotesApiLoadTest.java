@@ -0,0 +1,334 @@
+package smileksey.quotesapp.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import smileksey.quotesapp.dto.QuoteBatchResultDto;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.services.QuotesLeaderboard;
+import smileksey.quotesapp.services.VoteAggregator;
+import smileksey.quotesapp.services.WeightedQuoteSampler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//нагрузочный тест REST API: приложение на случайном порту со встроенной H2, клиенты в нескольких потоках
+//отправляют смесь запросов с заданной частотой, затем печатаются пропускная способность и задержки по каждому запросу
+//и проверяются инварианты: учтены все голоса, рейтинг не отрицательный, нет ответов 5xx
+//не входит в обычный mvn test, запуск: mvn test -Pload [-Dload.seconds=60 -Dload.threads=64 -Dload.rate=5000 -Dload.mix=65,20,10,5]
+@Tag("load")
+//все клиенты теста приходят с одного адреса, поэтому ограничение частоты запросов отключено
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "quotes.ratelimit.enabled=false")
+class QuotesApiLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(QuotesApiLoadTest.class);
+
+    private static final int SECONDS = Integer.getInteger("load.seconds", 20);
+    private static final int THREADS = Integer.getInteger("load.threads", 32);
+    //целевое количество запросов в секунду от всех потоков вместе
+    private static final int RATE = Integer.getInteger("load.rate", 2000);
+    //доли чтений, голосов, добавлений цитат и регистраций пользователей в процентах
+    private static final int[] MIX = Arrays.stream(System.getProperty("load.mix", "65,20,10,5").split(","))
+            .mapToInt(share -> Integer.parseInt(share.trim())).toArray();
+    private static final int USERS = Integer.getInteger("load.users", 20);
+    private static final int QUOTES = Integer.getInteger("load.quotes", 1000);
+
+    //начальный рейтинг засеянных цитат с четным номером: голоса "против" не упираются в ноль, и итог можно проверить точно
+    //цитаты с нечетным номером засеваются с нулевым рейтингом, чтобы голоса "против" упирались в ноль
+    private static final int INITIAL_VOTES = 1_000_000;
+    private static final String PASSWORD = "12345";
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private QuotesLeaderboard leaderboard;
+    @Autowired
+    private WeightedQuoteSampler weightedQuoteSampler;
+    @Autowired
+    private VoteAggregator voteAggregator;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private String runId;
+    private int[] quoteIds;
+    //успешные голоса "за" и "против" по каждой засеянной цитате
+    private AtomicIntegerArray upvotes;
+    private AtomicIntegerArray downvotes;
+    //счетчик для адресов пользователей, регистрируемых под нагрузкой
+    private final AtomicInteger registered = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        assertEquals(4, MIX.length, "load.mix must contain shares of reads, votes, writes and registrations");
+        runId = Long.toString(System.nanoTime());
+
+        for (int i = 0; i < USERS; i++) {
+            HttpResponse<String> response = send(post("/users/register",
+                    "{\"name\":\"Load user " + i + "\",\"email\":\"" + userEmail(i) + "\",\"password\":\"" + PASSWORD + "\"}"));
+            assertEquals(200, response.statusCode(), response.body());
+        }
+
+        List<String> contents = new ArrayList<>(QUOTES);
+        for (int i = 0; i < QUOTES; i++) {
+            contents.add("Load quote " + i);
+        }
+        HttpResponse<String> response = send(post("/quotes/batch", objectMapper.writeValueAsString(Map.of(
+                "userEmail", userEmail(0), "userPassword", PASSWORD, "quotes", contents))));
+        assertEquals(200, response.statusCode(), response.body());
+
+        quoteIds = objectMapper.readValue(response.body(), QuoteBatchResultDto.class).getSavedIds().stream()
+                .mapToInt(Integer::intValue).toArray();
+        upvotes = new AtomicIntegerArray(quoteIds.length);
+        downvotes = new AtomicIntegerArray(quoteIds.length);
+
+        //рейтинг меняется напрямую в БД, поэтому рейтинг и выбор цитат в памяти перезагружаются
+        List<Object[]> initialVotes = new ArrayList<>(quoteIds.length);
+        for (int i = 0; i < quoteIds.length; i++) {
+            initialVotes.add(new Object[]{initialVotes(i), quoteIds[i]});
+        }
+        jdbcTemplate.batchUpdate("update quote set votes = ? where id = ?", initialVotes);
+        leaderboard.reload();
+        weightedQuoteSampler.reload();
+    }
+
+    @Test
+    void mixedLoadKeepsInvariants() throws Exception {
+        long intervalNanos = 1_000_000_000L * THREADS / RATE;
+        long start = System.nanoTime() + 100_000_000L;
+        long end = start + SECONDS * 1_000_000_000L;
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Map<String, Stats>>> clients = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            //потоки сдвинуты друг относительно друга, чтобы запросы шли равномерно, а не пачками
+            long firstSend = start + intervalNanos * i / THREADS;
+            clients.add(executor.submit(() -> runClient(firstSend, end, intervalNanos)));
+        }
+
+        Map<String, Stats> total = new LinkedHashMap<>();
+        for (Future<Map<String, Stats>> client : clients) {
+            client.get().forEach((endpoint, stats) -> total.computeIfAbsent(endpoint, key -> new Stats()).merge(stats));
+        }
+        executor.shutdown();
+
+        report(total, (System.nanoTime() - start) / 1e9);
+
+        total.forEach((endpoint, stats) -> {
+            assertEquals(0, stats.transportErrors, endpoint + ": transport errors");
+            assertEquals(0, stats.serverErrors, endpoint + ": 5xx responses");
+        });
+        assertEquals(0, total.getOrDefault("GET /quotes/random", new Stats()).clientErrors, "random quote must always be found");
+
+        checkInvariants();
+    }
+
+    //один клиент: отправляет запросы по расписанию; задержка считается от запланированного времени отправки,
+    //поэтому перегрузка сервера видна в задержках, а не скрывается уменьшением частоты запросов
+    private Map<String, Stats> runClient(long firstSend, long end, long intervalNanos) {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (long scheduled = firstSend; scheduled < end; scheduled += intervalNanos) {
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            int roll = random.nextInt(100);
+            int index = random.nextInt(quoteIds.length);
+            String endpoint;
+            HttpRequest request;
+            int voteDelta = 0;
+
+            if (roll < MIX[0]) {
+                switch (random.nextInt(3)) {
+                    case 0 -> {
+                        endpoint = "GET /quotes/random";
+                        request = get("/quotes/random");
+                    }
+                    case 1 -> {
+                        endpoint = "GET /quotes/{id}";
+                        request = get("/quotes/" + quoteIds[index]);
+                    }
+                    default -> {
+                        endpoint = "GET /quotes/top10";
+                        request = get("/quotes/top10");
+                    }
+                }
+            } else if (roll < MIX[0] + MIX[1]) {
+                voteDelta = random.nextBoolean() ? 1 : -1;
+                endpoint = voteDelta > 0 ? "PATCH /quotes/{id}/upvote" : "PATCH /quotes/{id}/downvote";
+                request = patch("/quotes/" + quoteIds[index] + (voteDelta > 0 ? "/upvote" : "/downvote"));
+            } else if (roll < MIX[0] + MIX[1] + MIX[2]) {
+                endpoint = "POST /quotes/add";
+                request = post("/quotes/add", "{\"content\":\"Quote under load\",\"userEmail\":\""
+                        + userEmail(random.nextInt(USERS)) + "\",\"userPassword\":\"" + PASSWORD + "\"}");
+            } else {
+                endpoint = "POST /users/register";
+                int user = USERS + registered.getAndIncrement();
+                request = post("/users/register", "{\"name\":\"Load user " + user + "\",\"email\":\""
+                        + userEmail(user) + "\",\"password\":\"" + PASSWORD + "\"}");
+            }
+
+            Stats endpointStats = stats.computeIfAbsent(endpoint, key -> new Stats());
+
+            try {
+                int status = send(request).statusCode();
+                endpointStats.record(System.nanoTime() - scheduled, status);
+
+                if (status == 200 && voteDelta != 0) {
+                    (voteDelta > 0 ? upvotes : downvotes).incrementAndGet(index);
+                }
+            } catch (IOException e) {
+                endpointStats.transportErrors++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        return stats;
+    }
+
+    private void checkInvariants() throws Exception {
+        voteAggregator.flush();
+
+        for (int i = 0; i < quoteIds.length; i++) {
+            int votes = jdbcTemplate.queryForObject("select votes from quote where id = ?", Integer.class, quoteIds[i]);
+            int up = upvotes.get(i);
+            int down = downvotes.get(i);
+
+            if (initialVotes(i) > 0) {
+                assertEquals(INITIAL_VOTES + up - down, votes, "votes of quote " + quoteIds[i]);
+            } else {
+                //голоса "против" при нулевом рейтинге не учитываются: итог не ниже суммы голосов и не выше числа голосов "за"
+                assertTrue(votes >= Math.max(0, up - down) && votes <= up,
+                        "votes of quote " + quoteIds[i] + ": " + votes + " after " + up + " up and " + down + " down");
+            }
+        }
+
+        Integer minVotes = jdbcTemplate.queryForObject("select min(votes) from quote", Integer.class);
+        assertTrue(minVotes >= 0, "negative votes: " + minVotes);
+
+        //рейтинг в памяти совпадает с БД
+        List<Integer> expectedTop = jdbcTemplate.queryForList("select id from quote order by votes desc, id limit 10", Integer.class);
+        QuoteDto[] top = objectMapper.readValue(send(get("/quotes/top10")).body(), QuoteDto[].class);
+        assertEquals(expectedTop, Arrays.stream(top).map(QuoteDto::getId).toList(), "top10 differs from the database");
+    }
+
+    private void report(Map<String, Stats> total, double seconds) {
+        StringBuilder report = new StringBuilder(String.format("%nLoad: %d threads, target %d req/s, mix %s, %.1f s%n",
+                THREADS, RATE, Arrays.toString(MIX), seconds));
+        report.append(String.format("%-28s %8s %9s %9s %9s %9s %9s %6s%n",
+                "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors"));
+
+        total.forEach((endpoint, stats) -> report.append(String.format("%-28s %8d %9.1f %9.2f %9.2f %9.2f %9.2f %6d%n",
+                endpoint, stats.count, stats.count / seconds, stats.percentileMs(50), stats.percentileMs(99),
+                stats.percentileMs(99.9), stats.percentileMs(100), stats.clientErrors + stats.serverErrors + stats.transportErrors)));
+
+        log.info("{}", report);
+    }
+
+    private static int initialVotes(int i) {
+        return i % 2 == 0 ? INITIAL_VOTES : 0;
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest patch(String path) {
+        return request(path).method("PATCH", HttpRequest.BodyPublishers.noBody()).build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return request(path).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json)).build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).timeout(Duration.ofSeconds(30));
+    }
+
+    private String userEmail(int i) {
+        return "load" + i + "." + runId + "@mail.com";
+    }
+
+    //задержки и коды ответов одного запроса в одном потоке; потоки сливаются после окончания нагрузки
+    private static final class Stats {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int clientErrors;
+        private int serverErrors;
+        private int transportErrors;
+
+        private void record(long latencyNanos, int status) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+
+            if (status >= 500) {
+                serverErrors++;
+            } else if (status >= 400) {
+                clientErrors++;
+            }
+        }
+
+        private void merge(Stats other) {
+            latencies = Arrays.copyOf(latencies, count + other.count);
+            System.arraycopy(other.latencies, 0, latencies, count, other.count);
+            count += other.count;
+            clientErrors += other.clientErrors;
+            serverErrors += other.serverErrors;
+            transportErrors += other.transportErrors;
+            Arrays.sort(latencies, 0, count);
+        }
+
+        private double percentileMs(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            return latencies[Math.max(0, Math.min(index, count - 1))] / 1e6;
+        }
+    }
+}
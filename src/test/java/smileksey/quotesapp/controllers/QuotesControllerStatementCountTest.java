@@ -0,0 +1,104 @@
+package smileksey.quotesapp.controllers;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.models.User;
+import smileksey.quotesapp.services.QuotesService;
+import smileksey.quotesapp.services.UsersService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//количество SQL-запросов на один запрос к API чтения цитат не должно зависеть от количества авторов (нет N+1)
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+class QuotesControllerStatementCountTest {
+
+    private static final int AUTHORS = 5;
+    private static final int QUOTES_PER_AUTHOR = 3;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private QuotesService quotesService;
+    @Autowired
+    private UsersService usersService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private int quoteId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        //цитаты разных авторов - при загрузке автора отдельным запросом количество запросов росло бы с их числом
+        for (int i = 0; i < AUTHORS; i++) {
+            String email = "author" + i + "." + System.nanoTime() + "@mail.com";
+            usersService.createUser(new User("Author " + i, email, "12345", null));
+
+            User author = new User();
+            author.setEmail(email);
+            author.setPassword("12345");
+
+            List<Quote> quotes = new ArrayList<>();
+            for (int j = 0; j < QUOTES_PER_AUTHOR; j++) {
+                Quote quote = new Quote();
+                quote.setContent("Quote " + j + " by author " + i);
+                quotes.add(quote);
+            }
+            quotesService.addAll(author, quotes);
+
+            quoteId = quotes.get(0).getId();
+        }
+    }
+
+    @Test
+    void quoteByIdIsReadWithOneStatement() throws Exception {
+        assertStatements(1, "/quotes/" + quoteId);
+        //повторное чтение обслуживается кэшем цитат
+        assertStatements(0, "/quotes/" + quoteId);
+    }
+
+    @Test
+    void randomQuoteIsReadWithOneStatement() throws Exception {
+        assertStatements(1, "/quotes/random");
+        assertStatements(1, "/quotes/random?weighted=true");
+    }
+
+    @Test
+    void leaderboardsAreServedWithoutStatements() throws Exception {
+        assertStatements(0, "/quotes/top10");
+        assertStatements(0, "/quotes/worst10");
+        assertStatements(0, "/quotes/top?n=" + AUTHORS * QUOTES_PER_AUTHOR);
+        assertStatements(0, "/quotes/worst?n=" + AUTHORS * QUOTES_PER_AUTHOR);
+    }
+
+    @Test
+    void quotesPageIsReadWithOneStatement() throws Exception {
+        assertStatements(1, "/quotes?sort=id&limit=" + AUTHORS * QUOTES_PER_AUTHOR);
+        assertStatements(1, "/quotes?sort=votes&limit=" + AUTHORS * QUOTES_PER_AUTHOR);
+        assertStatements(1, "/quotes?sort=created&limit=" + AUTHORS * QUOTES_PER_AUTHOR);
+    }
+
+    private void assertStatements(long expected, String url) throws Exception {
+        statistics.clear();
+
+        mockMvc.perform(get(url)).andExpect(status().isOk());
+
+        assertEquals(expected, statistics.getPrepareStatementCount(), "SQL statements for " + url);
+    }
+}
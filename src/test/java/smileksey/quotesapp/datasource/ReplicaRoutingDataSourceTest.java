@@ -0,0 +1,159 @@
+package smileksey.quotesapp.datasource;
+
+import jakarta.servlet.http.Cookie;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+//маршрутизация запросов между основной БД и репликами на трех отдельных БД H2
+//в каждой БД одна строка с ее именем, по ней видно, куда ушел запрос
+class ReplicaRoutingDataSourceTest {
+
+    private static final DataSource PRIMARY = database("primary");
+    private static final DataSource REPLICA_1 = database("replica1");
+    private static final DataSource REPLICA_2 = database("replica2");
+    //БД не существует, подключение к ней завершается ошибкой
+    private static final DataSource DOWN_REPLICA = database("down;IFEXISTS=TRUE");
+
+    @BeforeAll
+    static void createDatabases() throws SQLException {
+        for (DataSource dataSource : List.of(PRIMARY, REPLICA_1, REPLICA_2)) {
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                String name = ((JdbcDataSource) dataSource).getURL().replaceAll("^jdbc:h2:mem:routing-|;.*$", "");
+                statement.execute("CREATE TABLE IF NOT EXISTS node (name varchar)");
+                statement.execute("DELETE FROM node");
+                statement.execute("INSERT INTO node VALUES ('" + name + "')");
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        TransactionSynchronizationManager.setCurrentTransactionName(null);
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplicasInTurn() throws SQLException {
+        ReplicaRoutingDataSource dataSource = routing(List.of(REPLICA_1, REPLICA_2));
+
+        assertEquals("primary", node(dataSource));
+
+        readOnlyTransaction();
+        assertEquals("replica1", node(dataSource));
+        assertEquals("replica2", node(dataSource));
+        assertEquals("replica1", node(dataSource));
+
+        writeTransaction();
+        assertEquals("primary", node(dataSource));
+    }
+
+    @Test
+    void primaryReadTransactionGoesToPrimaryWithoutCookie() throws SQLException {
+        ReplicaRoutingDataSource dataSource = routing(List.of(REPLICA_1));
+        MockHttpServletResponse response = inRequest(new MockHttpServletRequest());
+
+        readOnlyTransaction();
+        TransactionSynchronizationManager.setCurrentTransactionName(ReplicaRoutingDataSource.PRIMARY_READ_TRANSACTION);
+        assertEquals("primary", node(dataSource));
+
+        //такое чтение не считается записью: остальные чтения запроса идут в реплику
+        TransactionSynchronizationManager.setCurrentTransactionName(null);
+        assertEquals("replica1", node(dataSource));
+        assertNull(response.getCookie(ReplicaRoutingDataSource.READ_PRIMARY_COOKIE));
+    }
+
+    @Test
+    void unavailableReplicaIsSkipped() throws SQLException {
+        readOnlyTransaction();
+
+        ReplicaRoutingDataSource oneDown = routing(List.of(DOWN_REPLICA, REPLICA_1));
+        for (int i = 0; i < 4; i++) {
+            assertEquals("replica1", node(oneDown));
+        }
+
+        ReplicaRoutingDataSource allDown = routing(List.of(DOWN_REPLICA));
+        assertEquals("primary", node(allDown));
+    }
+
+    @Test
+    void readsAfterWriteGoToPrimary() throws SQLException {
+        ReplicaRoutingDataSource dataSource = routing(List.of(REPLICA_1));
+
+        //запрос с голосованием: после записи чтения в этом же запросе идут в основную БД, клиент получает cookie
+        MockHttpServletResponse voteResponse = inRequest(new MockHttpServletRequest());
+        writeTransaction();
+        assertEquals("primary", node(dataSource));
+        readOnlyTransaction();
+        assertEquals("primary", node(dataSource));
+
+        Cookie cookie = voteResponse.getCookie(ReplicaRoutingDataSource.READ_PRIMARY_COOKIE);
+        assertNotNull(cookie);
+
+        //следующий запрос клиента с cookie тоже читает из основной БД
+        MockHttpServletRequest nextRequest = new MockHttpServletRequest();
+        nextRequest.setCookies(cookie);
+        inRequest(nextRequest);
+        assertEquals("primary", node(dataSource));
+
+        //запросы других клиентов читают из реплики
+        inRequest(new MockHttpServletRequest());
+        assertEquals("replica1", node(dataSource));
+    }
+
+    private static ReplicaRoutingDataSource routing(List<DataSource> replicas) {
+        return new ReplicaRoutingDataSource(PRIMARY, replicas, ReplicaSelection.ROUND_ROBIN, Duration.ofMinutes(1), Duration.ofMinutes(1));
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:routing-" + name + (name.contains(";") ? "" : ";DB_CLOSE_DELAY=-1"));
+        return dataSource;
+    }
+
+    //соединение берется из реплики или основной БД только при первом запросе - как внутри транзакции
+    private static String node(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT name FROM node")) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private static void readOnlyTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    }
+
+    private static void writeTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    private static MockHttpServletResponse inRequest(MockHttpServletRequest request) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        return response;
+    }
+}
@@ -0,0 +1,72 @@
+package smileksey.quotesapp.profiling;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import smileksey.quotesapp.dto.SqlShapeStatsDto;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//запросы через ProfilingDataSource учитываются по формам: вызовы, ошибки, измененные строки, пакеты
+//и строки, прочитанные из ResultSet
+class ProfilingDataSourceTest {
+
+    private final SqlProfiler profiler = new SqlProfiler(Duration.ofHours(1), 100);
+    private final ProfilingDataSource dataSource = new ProfilingDataSource(
+            new DriverManagerDataSource("jdbc:h2:mem:profiling;DB_CLOSE_DELAY=-1"), profiler);
+
+    @Test
+    void executionsAndRowsAreRecordedPerShape() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table item (id int primary key, name varchar(20))");
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement("insert into item values (?, ?)")) {
+                for (int id = 1; id <= 3; id++) {
+                    insert.setInt(1, id);
+                    insert.setString(2, "item " + id);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+
+            try (PreparedStatement select = connection.prepareStatement("select name from item where id > ?")) {
+                select.setInt(1, 1);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        assertTrue(resultSet.getString(1).startsWith("item"));
+                    }
+                }
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                assertThrows(SQLException.class, () -> statement.executeQuery("select missing from item"));
+            }
+        }
+
+        Map<String, SqlShapeStatsDto> shapes = profiler.snapshot().stream()
+                .collect(Collectors.toMap(SqlShapeStatsDto::getShape, Function.identity()));
+
+        SqlShapeStatsDto insert = shapes.get(SqlProfiler.normalize("insert into item values (?, ?)"));
+        assertEquals(1, insert.getCalls());
+        assertEquals(3, insert.getRows());
+
+        SqlShapeStatsDto select = shapes.get(SqlProfiler.normalize("select name from item where id > ?"));
+        assertEquals(1, select.getCalls());
+        assertEquals(2, select.getRows());
+
+        assertEquals(1, shapes.get(SqlProfiler.normalize("select missing from item")).getErrors());
+    }
+}
@@ -0,0 +1,76 @@
+package smileksey.quotesapp.profiling;
+
+import org.junit.jupiter.api.Test;
+import smileksey.quotesapp.dto.SqlShapeStatsDto;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//запросы, отличающиеся только литералами, длиной списка IN, пробелами и комментариями, относятся к одной форме;
+//формы сверх лимита учитываются в одной строке
+class SqlProfilerTest {
+
+    @Test
+    void literalsAreReplacedWithParameter() {
+        assertEquals("select * from quote where id = ? and content = ?",
+                SqlProfiler.normalize("select * from quote where id = 42 and content = 'it''s ? here'"));
+        assertEquals("update quote set votes = votes + ? where votes > -? and rate < ?",
+                SqlProfiler.normalize("update quote set votes = votes + 1 where votes > -5 and rate < 0.75"));
+    }
+
+    @Test
+    void digitsInsideIdentifiersAreKept() {
+        assertEquals("select q1_0.id from quote q1_0 where q1_0.id=?",
+                SqlProfiler.normalize("select q1_0.id from quote q1_0 where q1_0.id=?"));
+    }
+
+    @Test
+    void inListsOfAnyLengthHaveSameShape() {
+        String shape = "select id from quote where id in (?...)";
+
+        assertEquals(shape, SqlProfiler.normalize("select id from quote where id in (?, ?, ?)"));
+        assertEquals(shape, SqlProfiler.normalize("select id from quote where id in (1,2,3,4,5)"));
+        assertEquals(shape, SqlProfiler.normalize("select id from quote where id in ( 'a' , 'b' )"));
+        //список из одного параметра остается как есть
+        assertEquals("select id from quote where id in (?)", SqlProfiler.normalize("select id from quote where id in (7)"));
+    }
+
+    @Test
+    void whitespaceAndCommentsAreCollapsed() {
+        assertEquals("select id from quote where id = ?", SqlProfiler.normalize("  select id\n\tfrom   quote\nwhere id = ?  "));
+        assertEquals("select id from quote where id = ?",
+                SqlProfiler.normalize("/* load Quote 12 */ select id from quote -- it's a comment ?\nwhere id = ?"));
+        assertEquals("select id from quote", SqlProfiler.normalize("select id from quote /* not closed ?"));
+    }
+
+    @Test
+    void bindParametersAreCountedOutsideLiteralsAndComments() {
+        assertEquals(0, SqlProfiler.countBindParameters("select 1"));
+        assertEquals(2, SqlProfiler.countBindParameters("update quote set votes = ? where id = ?"));
+        assertEquals(1, SqlProfiler.countBindParameters("select * from quote where content = '?' and id = ?"));
+        assertEquals(1, SqlProfiler.countBindParameters("select * from quote where content = 'it''s ?' and id = ?"));
+        assertEquals(1, SqlProfiler.countBindParameters("/* ? */ select * from quote -- ?\nwhere id = ?"));
+        assertEquals(3, SqlProfiler.countBindParameters("select id from quote where id in (?, ?, ?)"));
+    }
+
+    @Test
+    void shapesOverLimitAreCountedAsOther() {
+        SqlProfiler profiler = new SqlProfiler(Duration.ofHours(1), 2);
+
+        profiler.record("select * from quote where id = 1", 1_000, 0, 1, false);
+        profiler.record("select * from service_user where id = 2", 1_000, 0, 1, false);
+        profiler.record("select * from quote_vote where quote_id = 3", 1_000, 0, 1, false);
+        profiler.record("delete from quote where id = 4", 1_000, 0, 1, false);
+        //известная форма учитывается в своей строке и после заполнения таблицы
+        profiler.record("select * from quote where id = 5", 1_000, 0, 1, false);
+
+        Map<String, Long> calls = profiler.snapshot().stream()
+                .collect(Collectors.toMap(SqlShapeStatsDto::getShape, SqlShapeStatsDto::getCalls));
+
+        assertEquals(Map.of("select * from quote where id = ?", 2L, "select * from service_user where id = ?", 1L,
+                SqlProfiler.OTHER_SHAPE, 2L), calls);
+    }
+}
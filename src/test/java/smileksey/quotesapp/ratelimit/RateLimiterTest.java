@@ -0,0 +1,49 @@
+package smileksey.quotesapp.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//запас запросов расходуется и восстанавливается с заданной частотой, клиенты не влияют друг на друга,
+//а состояние клиентов с полным запасом удаляется
+class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimiter limiter = new RateLimiter(2, 3);
+    private final long start = 1_000 * SECOND;
+
+    @Test
+    void burstIsSpentAndRefilledAtRate() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("a", start));
+        }
+
+        //запас исчерпан, следующий запрос возможен через интервал 0.5 с
+        assertEquals(SECOND / 2, limiter.tryAcquire("a", start));
+        assertEquals(SECOND / 4, limiter.tryAcquire("a", start + SECOND / 4));
+        assertEquals(0, limiter.tryAcquire("a", start + SECOND / 2));
+
+        //другой клиент расходует свой запас
+        assertEquals(0, limiter.tryAcquire("b", start));
+    }
+
+    @Test
+    void idleClientsAreEvicted() {
+        limiter.tryAcquire("a", start);
+        limiter.tryAcquire("b", start);
+        limiter.tryAcquire("b", start);
+        assertEquals(2, limiter.size());
+
+        //через 0.5 с запас клиента a восстановлен, клиента b - еще нет
+        limiter.evictIdle(start + SECOND / 2);
+        assertEquals(1, limiter.size());
+
+        limiter.evictIdle(start + SECOND);
+        assertEquals(0, limiter.size());
+        assertTrue(limiter.tryAcquire("b", start + SECOND) == 0);
+    }
+}
@@ -0,0 +1,99 @@
+package smileksey.quotesapp.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.events.QuoteSavedEvent;
+import smileksey.quotesapp.events.QuoteVotedEvent;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.models.User;
+import smileksey.quotesapp.repositories.QuotesRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+//ETag списка 10 лучших (худших) цитат меняется только вместе с самим списком, голоса за остальные цитаты его не меняют
+class LeaderboardResponsesTest {
+
+    private static final int QUOTES = 30;
+
+    private final User author = new User("Author", "author@mail.com", "12345", null);
+    private QuotesLeaderboard leaderboard;
+    private LeaderboardResponses responses;
+
+    @BeforeEach
+    void setUp() {
+        leaderboard = new QuotesLeaderboard(mock(QuotesRepository.class), mock(QuoteShards.class), new DeletedQuotes(), 100);
+        responses = new LeaderboardResponses(leaderboard, new ObjectMapper());
+
+        //рейтинг цитаты равен ее id: лучшие - 21..30, худшие - 1..10
+        for (int id = 1; id <= QUOTES; id++) {
+            save(id, "quote " + id, id);
+        }
+    }
+
+    @Test
+    void votesOutsideListKeepResponseAndVersion() {
+        LeaderboardResponses.Encoded top = responses.top10();
+        LeaderboardResponses.Encoded worst = responses.worst10();
+
+        leaderboard.onQuoteVoted(new QuoteVotedEvent(15, 1));
+        leaderboard.onQuoteVoted(new QuoteVotedEvent(16, -1));
+
+        assertSame(top, responses.top10());
+        assertSame(worst, responses.worst10());
+    }
+
+    @Test
+    void changesInsideListChangeVersion() {
+        LeaderboardResponses.Encoded top = responses.top10();
+
+        //цитата 20 обгоняет цитату 21 и входит в список
+        leaderboard.onQuoteVoted(new QuoteVotedEvent(20, 2));
+        LeaderboardResponses.Encoded changed = responses.top10();
+        assertNotEquals(top.getEtag(), changed.getEtag());
+
+        //изменение текста цитаты из списка
+        save(30, "edited", 30);
+        assertNotEquals(changed.getEtag(), responses.top10().getEtag());
+
+        //удаление цитаты из списка худших
+        String worstEtag = responses.worst10().getEtag();
+        leaderboard.onQuoteDeleted(new QuoteDeletedEvent(1));
+        assertNotEquals(worstEtag, responses.worst10().getEtag());
+    }
+
+    @Test
+    void unchangedJsonKeepsEtag() {
+        LeaderboardResponses.Encoded top = responses.top10();
+        byte[] gzip = top.getGzip();
+
+        //запись цитаты из списка заменяется, но данные и json те же
+        leaderboard.onQuoteVoted(new QuoteVotedEvent(25, 0));
+        LeaderboardResponses.Encoded rebuilt = responses.top10();
+
+        assertEquals(top.getEtag(), rebuilt.getEtag());
+        assertSame(gzip, rebuilt.getGzip());
+    }
+
+    @Test
+    void sameJsonGetsSameEtagAfterRestart() {
+        String etag = responses.top10().getEtag();
+
+        //после перезапуска (или на другом экземпляре) версия рейтинга другая, а список тот же
+        leaderboard.onQuoteVoted(new QuoteVotedEvent(5, 0));
+        leaderboard.onQuoteVoted(new QuoteVotedEvent(25, 0));
+        LeaderboardResponses restarted = new LeaderboardResponses(leaderboard, new ObjectMapper());
+
+        assertEquals(etag, restarted.top10().getEtag());
+    }
+
+    private void save(int id, String content, int votes) {
+        Quote quote = new Quote(content, null, null, author, votes);
+        quote.setId(id);
+        leaderboard.onQuoteSaved(new QuoteSavedEvent(quote));
+    }
+}
@@ -0,0 +1,194 @@
+package smileksey.quotesapp.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import smileksey.quotesapp.dto.QuoteDto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//подписчик, соединение которого еще не приняло данные, получает только последний снимок; медленный подписчик
+//отключается, а запись остальным его не ждет; новый подписчик начинает с текущих голосов
+class LeaderboardStreamTest {
+
+    private static final Duration NEVER = Duration.ofHours(1);
+    private static final Pattern EVENT_ID = Pattern.compile("id:(\\d+)");
+    private static final Pattern VOTES = Pattern.compile("\"votes\":(\\d+)");
+
+    private final AtomicLong version = new AtomicLong(1);
+    private final AtomicInteger topId = new AtomicInteger(1);
+    private final AtomicInteger topVotes = new AtomicInteger(1);
+    private LeaderboardStream stream;
+
+    @AfterEach
+    void tearDown() {
+        if (stream != null) {
+            stream.stop();
+        }
+    }
+
+    @Test
+    void busySubscriberGetsOnlyLatestSnapshot() {
+        stream = start(NEVER);
+        TestConnection connection = subscribe();
+
+        //снимок 2 записан, но клиент его еще не принял - снимок 3 заменяется снимком 4
+        connection.stallAfterWrite = true;
+        change(2);
+        change(3);
+        change(4);
+        assertEquals(List.of(1L, 2L), connection.ids);
+
+        connection.accept();
+        assertEquals(List.of(1L, 2L, 4L), connection.ids);
+    }
+
+    @Test
+    void slowSubscriberIsDroppedWithoutBlockingOthers() throws Exception {
+        stream = start(Duration.ofMillis(50));
+        TestConnection slow = subscribe();
+        TestConnection healthy = subscribe();
+
+        slow.stallAfterWrite = true;
+        change(2);
+        assertEquals(List.of(1L, 2L), healthy.ids);
+
+        //соединение не принимает данные дольше slow-consumer-timeout - подписчик отключается при следующем снимке
+        Thread.sleep(100);
+        change(3);
+        assertTrue(slow.closed);
+        assertEquals(1, stream.subscribers(LeaderboardStream.Board.TOP10));
+
+        change(4);
+        assertEquals(List.of(1L, 2L, 3L, 4L), healthy.ids);
+        assertEquals(List.of(1L, 2L), slow.ids);
+    }
+
+    @Test
+    void newSubscriberStartsFromCurrentVotes() {
+        stream = start(NEVER);
+        TestConnection first = subscribe();
+
+        //голоса изменились, а состав списка - нет: подписанным ничего не отправляется
+        topVotes.set(7);
+        version.set(2);
+        stream.refresh();
+        assertEquals(List.of(1L), first.ids);
+
+        TestConnection second = subscribe();
+        assertEquals(List.of(2L), second.ids);
+        assertEquals(List.of(7), second.votes);
+    }
+
+    @Test
+    void closedConnectionIsRemoved() {
+        stream = start(NEVER);
+        TestConnection connection = subscribe();
+
+        connection.onClosed.run();
+        change(2);
+
+        assertEquals(0, stream.subscribers(LeaderboardStream.Board.TOP10));
+        assertEquals(List.of(1L), connection.ids);
+        assertFalse(connection.closed);
+    }
+
+    private LeaderboardStream start(Duration slowConsumerTimeout) {
+        QuotesLeaderboard leaderboard = mock(QuotesLeaderboard.class);
+        when(leaderboard.getVersion()).thenAnswer(invocation -> version.get());
+        when(leaderboard.top(anyInt())).thenAnswer(invocation -> List.of(quote(topId.get(), topVotes.get())));
+        when(leaderboard.worst(anyInt())).thenAnswer(invocation -> List.of(quote(topId.get(), topVotes.get())));
+
+        LeaderboardStream leaderboardStream = new LeaderboardStream(leaderboard, new ObjectMapper(), NEVER, NEVER, NEVER,
+                slowConsumerTimeout);
+        leaderboardStream.start();
+        return leaderboardStream;
+    }
+
+    private TestConnection subscribe() {
+        TestConnection connection = new TestConnection();
+        stream.subscribe(LeaderboardStream.Board.TOP10, connection);
+        return connection;
+    }
+
+    //новый лидер списка с id, равным новой версии рейтинга
+    private void change(int newVersion) {
+        topId.set(newVersion);
+        version.set(newVersion);
+        stream.refresh();
+    }
+
+    private static QuoteDto quote(int id, int votes) {
+        return new QuoteDto(id, "quote " + id, "user", "user@mail.com", votes, null, null);
+    }
+
+    //соединение без сети: запоминает id и рейтинг отправленных событий; как и контейнер, не дает писать,
+    //пока клиент не принял предыдущие данные, и сообщает о готовности через onWritable
+    private static final class TestConnection implements SseConnection {
+        private final List<Long> ids = new CopyOnWriteArrayList<>();
+        private final List<Integer> votes = new CopyOnWriteArrayList<>();
+        private volatile boolean ready = true;
+        private volatile boolean stallAfterWrite;
+        private volatile boolean closed;
+        private Runnable onWritable;
+        private Runnable onClosed;
+
+        @Override
+        public void start(Runnable onWritable, Runnable onClosed) {
+            this.onWritable = onWritable;
+            this.onClosed = onClosed;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void write(byte[] message) {
+            if (!ready) {
+                throw new IllegalStateException("Connection is not ready");
+            }
+
+            String event = new String(message, StandardCharsets.UTF_8);
+            Matcher id = EVENT_ID.matcher(event);
+            if (id.find()) {
+                ids.add(Long.parseLong(id.group(1)));
+            }
+            Matcher quoteVotes = VOTES.matcher(event);
+            if (quoteVotes.find()) {
+                votes.add(Integer.parseInt(quoteVotes.group(1)));
+            }
+
+            if (stallAfterWrite) {
+                ready = false;
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        //клиент принял данные
+        private void accept() {
+            stallAfterWrite = false;
+            ready = true;
+            onWritable.run();
+        }
+    }
+}
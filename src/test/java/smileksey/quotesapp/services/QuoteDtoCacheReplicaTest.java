@@ -0,0 +1,101 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.web.context.request.RequestContextHolder;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.models.User;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//кэш цитат при чтении из реплики: реплика отстает от основной БД, но после изменения цитаты
+//в кэш должно попасть состояние из основной БД, а не устаревшее из реплики
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:lagging-primary;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "quotes.datasource.replica-urls=" + QuoteDtoCacheReplicaTest.REPLICA
+})
+class QuoteDtoCacheReplicaTest {
+
+    static final String REPLICA = "jdbc:h2:mem:lagging-replica;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+
+    static {
+        try (Connection connection = DriverManager.getConnection(REPLICA, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("RUNSCRIPT FROM 'src/main/sql/db.sql'");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Autowired
+    private QuotesService quotesService;
+    @Autowired
+    private UsersService usersService;
+
+    //тест выполняется вне HTTP-запроса: иначе после первой записи все чтения запроса шли бы в основную БД (read-your-writes)
+    @BeforeEach
+    void setUp() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void cacheIsLoadedFromPrimaryWhileReplicaLags() throws SQLException {
+        String email = "lagging@mail.com";
+        usersService.createUser(new User("Lagging author", email, "12345", null));
+        User author = credentials(email);
+
+        Quote quote = new Quote();
+        quote.setContent("Original");
+        quote.setUser(author);
+        quotesService.add(quote);
+        int id = quote.getId();
+
+        //реплика получила цитату (с другим текстом, чтобы было видно, откуда она прочитана) и больше не обновляется
+        replicate(id, email);
+        assertEquals("Original", quotesService.findById(id).getContent());
+
+        quotesService.upvote(id);
+        assertEquals(1, quotesService.findById(id).getVotes());
+
+        Quote updatedQuote = new Quote();
+        updatedQuote.setContent("Updated");
+        updatedQuote.setUser(author);
+        quotesService.update(updatedQuote, id);
+
+        //повторное чтение - из кэша, в нем тоже состояние основной БД
+        for (int i = 0; i < 2; i++) {
+            QuoteDto quoteDto = quotesService.findById(id);
+            assertEquals("Updated", quoteDto.getContent());
+            assertEquals(1, quoteDto.getVotes());
+        }
+    }
+
+    private static void replicate(int quoteId, String email) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(REPLICA, "sa", "");
+             PreparedStatement user = connection.prepareStatement(
+                     "insert into service_user (id, name, email, password) values (1, 'Lagging author', ?, '12345')");
+             PreparedStatement quote = connection.prepareStatement(
+                     "insert into quote (id, content, user_id, votes) values (?, 'Replica', 1, 0)")) {
+            user.setString(1, email);
+            user.executeUpdate();
+            quote.setInt(1, quoteId);
+            quote.executeUpdate();
+        }
+    }
+
+    private static User credentials(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword("12345");
+        return user;
+    }
+}
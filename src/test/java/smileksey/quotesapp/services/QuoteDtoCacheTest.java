@@ -0,0 +1,122 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.exceptions.QuoteNotFoundException;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.models.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//после завершения изменения цитаты чтение по id не должно возвращать старое состояние из кэша,
+//даже если параллельные читатели в это время загружают цитату в кэш
+@SpringBootTest
+class QuoteDtoCacheTest {
+
+    private static final int READERS = 4;
+    private static final int WRITES = 200;
+
+    @Autowired
+    private QuotesService quotesService;
+    @Autowired
+    private UsersService usersService;
+    @Autowired
+    private QuoteDtoCache quoteDtoCache;
+
+    private User author;
+
+    @BeforeEach
+    void setUp() {
+        String email = "cached" + System.nanoTime() + "@mail.com";
+        usersService.createUser(new User("Cached author", email, "12345", null));
+        author = credentials(email);
+    }
+
+    @Test
+    void readAfterWriteIsNeverStale() throws Exception {
+        int id = addQuote("Version 0");
+        long hitsBefore = quoteDtoCache.getStats().hitCount();
+
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        List<Future<?>> readers = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < READERS; i++) {
+                readers.add(executor.submit(() -> {
+                    while (!stop.get()) {
+                        quotesService.findById(id);
+                    }
+                    return null;
+                }));
+            }
+
+            for (int i = 1; i <= WRITES; i++) {
+                if (i % 2 == 0) {
+                    quotesService.upvote(id);
+                } else {
+                    quotesService.upvote(id);
+                    quotesService.upvote(id);
+                    quotesService.downvote(id);
+                }
+
+                if (i % 10 == 0) {
+                    Quote updatedQuote = new Quote();
+                    updatedQuote.setContent("Version " + i);
+                    updatedQuote.setUser(author);
+                    quotesService.update(updatedQuote, id);
+                }
+
+                QuoteDto quoteDto = quotesService.findById(id);
+                assertEquals(i, quoteDto.getVotes(), "votes after write " + i);
+                assertEquals("Version " + (i / 10 * 10), quoteDto.getContent(), "content after write " + i);
+            }
+        } finally {
+            stop.set(true);
+            executor.shutdown();
+        }
+
+        for (Future<?> reader : readers) {
+            reader.get();
+        }
+
+        assertTrue(quoteDtoCache.getStats().hitCount() > hitsBefore);
+    }
+
+    @Test
+    void deletedQuoteIsNotServedFromCache() {
+        int id = addQuote("Soon deleted");
+        quotesService.findById(id);
+
+        quotesService.delete(id);
+
+        assertThrows(QuoteNotFoundException.class, () -> quotesService.findById(id));
+    }
+
+    private int addQuote(String content) {
+        Quote quote = new Quote();
+        quote.setContent(content);
+        quote.setUser(author);
+        quotesService.add(quote);
+        return quote.getId();
+    }
+
+    private static User credentials(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword("12345");
+        return user;
+    }
+}
@@ -0,0 +1,85 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.events.QuoteSavedEvent;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.repositories.QuotesRepository;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+//поиск по всем словам запроса должен учитывать добавление, изменение и удаление цитат в любом порядке id
+class QuoteSearchIndexTest {
+
+    private QuoteSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new QuoteSearchIndex(mock(QuotesRepository.class), mock(QuoteShards.class), new DeletedQuotes());
+    }
+
+    @Test
+    void tokenizeSplitsOnNonWordCharactersAndLowercases() {
+        assertEquals(Set.of("hello", "world", "42"), QuoteSearchIndex.tokenize("Hello, WORLD!  42 hello"));
+        assertEquals(Set.of(), QuoteSearchIndex.tokenize(" ?! "));
+    }
+
+    @Test
+    void searchReturnsQuotesContainingAllWords() {
+        index.put(30, "to be or not to be");
+        index.put(10, "be quick");
+        index.put(20, "Not quick, but sure");
+
+        assertArrayEquals(new int[]{10, 30}, index.search(Set.of("be")));
+        assertArrayEquals(new int[]{20, 30}, index.search(Set.of("not")));
+        assertArrayEquals(new int[]{10}, index.search(Set.of("be", "quick")));
+        assertArrayEquals(new int[]{}, index.search(Set.of("be", "missing")));
+    }
+
+    @Test
+    void updateAndDeleteReplaceWordsOfQuote() {
+        index.put(1, "old words");
+        index.put(2, "old news");
+
+        index.put(1, "new words");
+        index.remove(2);
+
+        assertArrayEquals(new int[]{}, index.search(Set.of("old")));
+        assertArrayEquals(new int[]{1}, index.search(Set.of("new", "words")));
+        assertEquals(1, index.size());
+        assertEquals(2, index.terms());
+    }
+
+    @Test
+    void saveAfterDeleteDoesNotRestoreQuote() {
+        Quote quote = new Quote("late save", null, null, null, 0);
+        quote.setId(1);
+        index.onQuoteSaved(new QuoteSavedEvent(quote));
+
+        //сохранение закоммичено раньше удаления, но его событие пришло позже
+        index.onQuoteDeleted(new QuoteDeletedEvent(1));
+        index.onQuoteSaved(new QuoteSavedEvent(quote));
+
+        assertArrayEquals(new int[]{}, index.search(Set.of("late")));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void memoryDoesNotDependOnLargestId() {
+        index.put(5, "small id");
+        long small = index.estimateMemory();
+
+        //id из далекого диапазона (другой шард) не должен растягивать массивы до наибольшего id
+        index.put(2_000_000_000, "large id");
+        index.remove(5);
+
+        assertArrayEquals(new int[]{2_000_000_000}, index.search(Set.of("id")));
+        assertEquals(1, index.size());
+        assertEquals(small, index.estimateMemory());
+    }
+}
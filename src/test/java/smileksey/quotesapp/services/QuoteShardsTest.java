@@ -0,0 +1,211 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.dto.QuotesPageDto;
+import smileksey.quotesapp.dto.VoteDeltaDto;
+import smileksey.quotesapp.dto.VoteResultDto;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.models.User;
+import smileksey.quotesapp.util.QuotesSort;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//цитаты в трех БД H2: шард 0 - основная БД (схему создает Hibernate), шарды 1 и 2 - по db.sql
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sharded-0;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "quotes.sharding.shard-urls=" + QuoteShardsTest.SHARD_1 + "," + QuoteShardsTest.SHARD_2,
+        "quotes.cache.enabled=false"
+})
+class QuoteShardsTest {
+
+    static final String SHARD_1 = "jdbc:h2:mem:sharded-1;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+    static final String SHARD_2 = "jdbc:h2:mem:sharded-2;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+    private static final int QUOTES = 12;
+
+    static {
+        for (String url : List.of(SHARD_1, SHARD_2)) {
+            try (Connection connection = DriverManager.getConnection(url, "sa", "");
+                 Statement statement = connection.createStatement()) {
+                statement.execute("RUNSCRIPT FROM 'src/main/sql/db.sql'");
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @Autowired
+    private QuotesService quotesService;
+    @Autowired
+    private UsersService usersService;
+    @Autowired
+    private QuoteShards quoteShards;
+    @Autowired
+    private QuotesLeaderboard leaderboard;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void quotesArePartitionedByIdAndMergedAcrossShards() {
+        String email = "sharded@mail.com";
+        usersService.createUser(new User("Sharded author", email, "12345", null));
+
+        //автор скопирован во все шарды
+        for (int shard = 0; shard < quoteShards.count(); shard++) {
+            assertEquals(1, countOnShard(shard, "select count(*) from service_user where email = '" + email + "'"));
+        }
+
+        for (int i = 0; i < QUOTES; i++) {
+            quotesService.add(new Quote("Sharded quote " + i, null, null, credentials(email), 0));
+        }
+
+        //каждая цитата хранится только в своем шарде, шарды заполнены равномерно
+        for (int shard = 0; shard < quoteShards.count(); shard++) {
+            assertEquals(QUOTES / quoteShards.count(), countOnShard(shard, "select count(*) from quote"));
+            assertEquals(0, countOnShard(shard, "select count(*) from quote where mod(id, 3) <> " + shard));
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        quotesService.exportAll(quoteDto -> ids.add(quoteDto.getId()));
+        assertEquals(QUOTES, ids.size());
+
+        //голоса и изменения попадают в шард цитаты
+        for (int i = 0; i < ids.size(); i++) {
+            for (int vote = 0; vote < i % 5; vote++) {
+                quotesService.upvote(ids.get(i));
+            }
+            assertEquals(i % 5, quotesService.findById(ids.get(i)).getVotes());
+        }
+        quotesService.delete(ids.get(0));
+
+        //страницы по рейтингу собираются из всех шардов в общем порядке
+        List<QuoteDto> paged = new ArrayList<>();
+        String after = null;
+        do {
+            QuotesPageDto page = quotesService.findPage(QuotesSort.VOTES, after, 5);
+            paged.addAll(page.getQuotes());
+            after = page.getNext();
+        } while (after != null);
+
+        assertEquals(QUOTES - 1, paged.size());
+        List<QuoteDto> expected = new ArrayList<>(paged);
+        expected.sort(QuotesSort.VOTES.order());
+        assertEquals(expected.stream().map(QuoteDto::getId).toList(), paged.stream().map(QuoteDto::getId).toList());
+
+        //рейтинг в памяти после перезагрузки содержит цитаты всех шардов
+        leaderboard.reload();
+        List<QuoteDto> top = quotesService.findTop(QUOTES);
+        assertEquals(paged.stream().map(QuoteDto::getId).toList(), top.stream().map(QuoteDto::getId).toList());
+        assertTrue(top.stream().map(QuoteDto::getVotes).sorted(Comparator.reverseOrder()).toList()
+                .equals(top.stream().map(QuoteDto::getVotes).toList()));
+    }
+
+    @Test
+    void bulkVotesOnEveryShardUpdateLeaderboardByAppliedChange() {
+        String email = "sharded-bulk@mail.com";
+        usersService.createUser(new User("Sharded voter", email, "12345", null));
+
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < quoteShards.count() * 2; i++) {
+            Quote quote = new Quote("Bulk sharded quote " + i, null, null, credentials(email), 0);
+            quotesService.add(quote);
+            ids.add(quote.getId());
+        }
+
+        //сумма -3 упирается в ноль при рейтинге 1, следующий +1 должен дать рейтинг 1 и в памяти
+        List<VoteDeltaDto> up = ids.stream().map(id -> new VoteDeltaDto(id, 1)).toList();
+        quotesService.voteAll(up);
+        quotesService.voteAll(ids.stream().map(id -> new VoteDeltaDto(id, -3)).toList());
+        quotesService.voteAll(up);
+
+        for (int id : ids) {
+            int stored = countOnShard(quoteShards.shardOf(id), "select votes from quote where id = " + id);
+            assertEquals(1, stored);
+            assertEquals(stored, leaderboard.find(id).orElseThrow().getVotes());
+        }
+
+        //другой тест считает все цитаты шардов
+        ids.forEach(quotesService::delete);
+    }
+
+    @Test
+    void bulkVotesReportShardThatFailed() throws SQLException {
+        String email = "partial-bulk@mail.com";
+        usersService.createUser(new User("Partial voter", email, "12345", null));
+
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < quoteShards.count(); i++) {
+            Quote quote = new Quote("Partially voted quote " + i, null, null, credentials(email), 0);
+            quotesService.add(quote);
+            ids.add(quote.getId());
+        }
+
+        //шард 2 недоступен для записи: голоса шардов 0 и 1 записываются, id шарда 2 помечаются failed
+        List<VoteResultDto> results;
+        executeOnShard2("alter table quote rename to quote_unavailable");
+        try {
+            results = quotesService.voteAll(ids.stream().map(id -> new VoteDeltaDto(id, 2)).toList());
+        } finally {
+            executeOnShard2("alter table quote_unavailable rename to quote");
+        }
+
+        assertEquals(ids.size(), results.size());
+        for (VoteResultDto result : results) {
+            int shard = quoteShards.shardOf(result.getId());
+            int stored = countOnShard(shard, "select votes from quote where id = " + result.getId());
+
+            assertEquals(shard == 2, result.isFailed());
+            assertEquals(shard == 2 ? 0 : 2, result.getDelta());
+            assertEquals(result.getDelta(), stored);
+        }
+
+        ids.forEach(quotesService::delete);
+    }
+
+    @Test
+    void registrationReplacesCopiesLeftByFailedAttempt() {
+        String email = "retried@mail.com";
+
+        //прошлая регистрация записала копию в шард 1 и не завершилась: в шарде 0 пользователя нет
+        quoteShards.writeToShard(1, () -> jdbcTemplate.update(
+                "insert into service_user (id, name, email, password, date_of_creation) values (1000000, 'Failed', ?, '1', now())", email));
+
+        usersService.createUser(new User("Retried", email, "12345", null));
+
+        int id = usersService.findByEmail(email).orElseThrow().getId();
+        for (int shard = 0; shard < quoteShards.count(); shard++) {
+            assertEquals(1, countOnShard(shard, "select count(*) from service_user where email = '" + email + "'"));
+            assertEquals(1, countOnShard(shard, "select count(*) from service_user where id = " + id));
+        }
+    }
+
+    private static void executeOnShard2(String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(SHARD_2, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private int countOnShard(int shard, String sql) {
+        return quoteShards.onShard(shard, () -> jdbcTemplate.queryForObject(sql, Integer.class));
+    }
+
+    private static User credentials(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword("12345");
+        return user;
+    }
+}
@@ -0,0 +1,148 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import smileksey.quotesapp.exceptions.VoteRejectedException;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.models.User;
+import smileksey.quotesapp.repositories.QuoteVotersRepository;
+import smileksey.quotesapp.repositories.QuotesRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//голос пользователя за цитату учитывается один раз, смена направления отменяет то, что прежний голос изменил в рейтинге
+@SpringBootTest
+class QuoteVotersTest {
+
+    private static final int THREADS = 8;
+
+    @Autowired
+    private QuotesService quotesService;
+    @Autowired
+    private UsersService usersService;
+    @Autowired
+    private QuotesRepository quotesRepository;
+
+    private User first;
+    private User second;
+    private int quoteId;
+
+    @BeforeEach
+    void setUp() {
+        first = createUser("first");
+        second = createUser("second");
+
+        Quote quote = new Quote();
+        quote.setContent("Vote for me");
+        quote.setUser(credentials(first));
+        quotesService.add(quote);
+        quoteId = quote.getId();
+    }
+
+    @Test
+    void repeatedVotesOfUserAreIgnoredAndDirectionCanChange() {
+        quotesService.upvote(quoteId, credentials(first));
+        quotesService.upvote(quoteId, credentials(first));
+        quotesService.upvote(quoteId, credentials(second));
+        assertEquals(2, votes());
+
+        //прежний голос "за" отменяется и учитывается голос "против"
+        quotesService.downvote(quoteId, credentials(first));
+        quotesService.downvote(quoteId, credentials(first));
+        assertEquals(0, votes());
+
+        quotesService.upvote(quoteId, credentials(first));
+        assertEquals(2, votes());
+    }
+
+    @Test
+    void userIdThatDoesNotFitIntoEncodedVoteIsRejected() {
+        int max = QuoteVotersRepository.MAX_USER_ID;
+
+        //голоса упорядочены по id пользователя вплоть до наибольшего допустимого id
+        assertEquals(Integer.MAX_VALUE, QuoteVotersRepository.encode(max, 1, 1));
+        assertTrue(QuoteVotersRepository.encode(max, -1, -1) > QuoteVotersRepository.encode(max - 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> QuoteVotersRepository.encode(max + 1, -1, -1));
+    }
+
+    @Test
+    void downvoteThatHitZeroIsNotReversedOnDirectionChange() {
+        //голос "против" при нулевом рейтинге ничего не меняет, поэтому смена направления поднимает рейтинг только на 1
+        quotesService.downvote(quoteId, credentials(first));
+        assertEquals(0, votes());
+        quotesService.upvote(quoteId, credentials(first));
+        assertEquals(1, votes());
+
+        //отменяется голос "за", второй голос "против" упирается в ноль
+        quotesService.downvote(quoteId, credentials(first));
+        assertEquals(0, votes());
+        quotesService.upvote(quoteId, credentials(first));
+        quotesService.upvote(quoteId, credentials(first));
+        assertEquals(1, votes());
+
+        //голос второго пользователя меняет рейтинг полностью, пока рейтинг не упирается в ноль
+        quotesService.upvote(quoteId, credentials(second));
+        quotesService.downvote(quoteId, credentials(second));
+        assertEquals(0, votes());
+        quotesService.upvote(quoteId, credentials(second));
+        assertEquals(2, votes());
+    }
+
+    @Test
+    void concurrentVotesOfOneUserCountOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        quotesService.upvote(quoteId, credentials(second));
+                    } catch (VoteRejectedException e) {
+                        //параллельная запись того же голоса
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, votes());
+    }
+
+    private int votes() {
+        return quotesRepository.findById(quoteId).orElseThrow().getVotes();
+    }
+
+    private User createUser(String name) {
+        User user = new User(name, name + System.nanoTime() + "@mail.com", "12345", null);
+        usersService.createUser(user);
+        return user;
+    }
+
+    private static User credentials(User user) {
+        User voter = new User();
+        voter.setEmail(user.getEmail());
+        voter.setPassword(user.getPassword());
+        return voter;
+    }
+}
@@ -0,0 +1,132 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.events.QuoteSavedEvent;
+import smileksey.quotesapp.events.QuoteVotedEvent;
+import smileksey.quotesapp.events.QuoteVotesFlushedEvent;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.models.User;
+import smileksey.quotesapp.repositories.QuotesRepository;
+import smileksey.quotesapp.repositories.UsersRepository;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+//рейтинг в памяти совпадает с рейтингом в БД, когда голоса "против" упираются в ноль:
+//накопитель маленький, поэтому часть голосов записывается пакетами, а часть (при переполнении) - сразу;
+//события, пришедшие не в порядке коммитов, не теряют голоса и не возвращают удаленные цитаты
+@SpringBootTest(properties = {
+        "quotes.votes.write-behind.enabled=true",
+        "quotes.votes.write-behind.flush-threshold=3",
+        "quotes.votes.write-behind.max-pending=4"})
+class QuotesLeaderboardTest {
+
+    private static final int QUOTES = 8;
+    private static final int THREADS = 8;
+    private static final int VOTES_PER_THREAD = 200;
+
+    @Autowired
+    private QuotesService quotesService;
+    @Autowired
+    private QuotesLeaderboard leaderboard;
+    @Autowired
+    private VoteAggregator voteAggregator;
+    @Autowired
+    private QuotesRepository quotesRepository;
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Test
+    void concurrentVotesAtZeroMatchDatabaseTotals() throws Exception {
+        User user = usersRepository.save(new User("Voter", "leaderboard" + System.nanoTime() + "@mail.com", "12345", new Date()));
+        int[] ids = new int[QUOTES];
+        for (int i = 0; i < QUOTES; i++) {
+            Quote quote = new Quote("Quote near zero " + i, new Date(), null, user, i % 2);
+            quotesService.add(quote);
+            ids[i] = quote.getId();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                Callable<Void> task = () -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int j = 0; j < VOTES_PER_THREAD; j++) {
+                        int id = ids[random.nextInt(QUOTES)];
+                        //голосов "против" больше, чтобы рейтинг часто был нулевым
+                        if (random.nextInt(5) < 2) {
+                            quotesService.upvote(id);
+                        } else {
+                            quotesService.downvote(id);
+                        }
+                    }
+                    return null;
+                };
+                futures.add(executor.submit(task));
+            }
+
+            start.countDown();
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        voteAggregator.flush();
+
+        for (int id : ids) {
+            int stored = quotesRepository.findById(id).orElseThrow().getVotes();
+            assertEquals(stored, leaderboard.find(id).orElseThrow().getVotes(), "quote " + id);
+            assertEquals(stored, quotesService.findById(id).getVotes(), "quote " + id);
+        }
+    }
+
+    @Test
+    void eventsOutOfCommitOrderKeepVotesAndDeletes() {
+        QuotesLeaderboard board = new QuotesLeaderboard(mock(QuotesRepository.class), mock(QuoteShards.class), new DeletedQuotes(), 100);
+        User author = new User("Author", "author@mail.com", "12345", null);
+
+        //голоса, в том числе незаписанные и их запись в БД, пришли раньше сохранения цитаты
+        board.onQuoteVoted(new QuoteVotedEvent(1, 2));
+        board.onQuoteVoted(new QuoteVotedEvent(1, 3, true));
+        board.onQuoteVotesFlushed(new QuoteVotesFlushedEvent(Map.of(1, 1), Map.of(1, 1)));
+        board.onQuoteSaved(new QuoteSavedEvent(quote(1, author)));
+        assertEquals(5, board.find(1).orElseThrow().getVotes());
+
+        //сохранение и голос пришли после удаления
+        board.onQuoteSaved(new QuoteSavedEvent(quote(2, author)));
+        board.onQuoteDeleted(new QuoteDeletedEvent(2));
+        board.onQuoteSaved(new QuoteSavedEvent(quote(2, author)));
+        board.onQuoteVoted(new QuoteVotedEvent(2, 1));
+        assertTrue(board.find(2).isEmpty());
+        assertEquals(List.of(1), board.top(10).stream().map(QuoteDto::getId).toList());
+    }
+
+    private static Quote quote(int id, User author) {
+        Quote quote = new Quote("quote " + id, null, null, author, 0);
+        quote.setId(id);
+        return quote;
+    }
+}
@@ -0,0 +1,99 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.dto.QuotesPageDto;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.models.User;
+import smileksey.quotesapp.util.QuotesSort;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//обход всех страниц при каждой сортировке возвращает каждую цитату один раз и в порядке сортировки,
+//в том числе при равных рейтингах и датах и для цитат без даты создания
+@SpringBootTest
+class QuotesPagingTest {
+
+    private static final int PAGE_SIZE = 3;
+
+    @Autowired
+    private QuotesService quotesService;
+    @Autowired
+    private UsersService usersService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        User author = new User("Pager", "pager" + System.nanoTime() + "@mail.com", "12345", null);
+        usersService.createUser(author);
+
+        for (int i = 0; i < 10; i++) {
+            Quote quote = new Quote();
+            quote.setContent("Page me " + i);
+            quote.setUser(credentials(author));
+            quotesService.add(quote);
+
+            //одинаковые рейтинги, часть цитат с одинаковой датой и часть без даты
+            jdbcTemplate.update("update quote set votes = ? where id = ?", i % 3, quote.getId());
+            if (i % 4 == 0) {
+                jdbcTemplate.update("update quote set date_of_creation = null where id = ?", quote.getId());
+            } else if (i % 4 == 1) {
+                jdbcTemplate.update("update quote set date_of_creation = date '2020-01-01' where id = ?", quote.getId());
+            }
+        }
+    }
+
+    @Test
+    void pagesByIdCoverAllQuotesInOrder() {
+        assertPages(QuotesSort.ID);
+    }
+
+    @Test
+    void pagesByVotesCoverAllQuotesInOrder() {
+        assertPages(QuotesSort.VOTES);
+    }
+
+    @Test
+    void pagesByCreatedCoverAllQuotesInOrder() {
+        assertPages(QuotesSort.CREATED);
+    }
+
+    private void assertPages(QuotesSort sort) {
+        List<QuoteDto> quotes = new ArrayList<>();
+        String next = null;
+
+        do {
+            QuotesPageDto page = quotesService.findPage(sort, next, PAGE_SIZE);
+            assertTrue(page.getQuotes().size() <= PAGE_SIZE);
+            quotes.addAll(page.getQuotes());
+            next = page.getNext();
+        } while (next != null);
+
+        Set<Integer> ids = new HashSet<>();
+        quotes.forEach(quote -> assertTrue(ids.add(quote.getId()), "quote " + quote.getId() + " is repeated"));
+        assertEquals(new HashSet<>(jdbcTemplate.queryForList("select id from quote", Integer.class)), ids);
+
+        for (int i = 1; i < quotes.size(); i++) {
+            assertTrue(sort.order().compare(quotes.get(i - 1), quotes.get(i)) < 0,
+                    "quote " + quotes.get(i - 1).getId() + " should go after quote " + quotes.get(i).getId());
+        }
+    }
+
+    private static User credentials(User user) {
+        User author = new User();
+        author.setEmail(user.getEmail());
+        author.setPassword(user.getPassword());
+        return author;
+    }
+}
@@ -0,0 +1,117 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import smileksey.quotesapp.dto.VoteDeltaDto;
+import smileksey.quotesapp.dto.VoteResultDto;
+import smileksey.quotesapp.exceptions.QuoteNotFoundException;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.models.User;
+import smileksey.quotesapp.repositories.QuotesRepository;
+import smileksey.quotesapp.repositories.UsersRepository;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class QuotesServiceConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int VOTES_PER_THREAD = 50;
+
+    @Autowired
+    private QuotesService quotesService;
+    @Autowired
+    private QuotesRepository quotesRepository;
+    @Autowired
+    private UsersRepository usersRepository;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = usersRepository.save(new User("Voter", "voter" + System.nanoTime() + "@mail.com", "12345", new Date()));
+    }
+
+    @Test
+    void concurrentUpvotesAreNotLost() throws Exception {
+        Quote quote = quotesRepository.save(new Quote("Popular quote", new Date(), null, user, 0));
+
+        hammer(quote.getId(), quotesService::upvote);
+
+        assertEquals(THREADS * VOTES_PER_THREAD, quotesRepository.findById(quote.getId()).orElseThrow().getVotes());
+    }
+
+    @Test
+    void concurrentDownvotesStopAtZero() throws Exception {
+        Quote quote = quotesRepository.save(new Quote("Unpopular quote", new Date(), null, user, 100));
+
+        hammer(quote.getId(), quotesService::downvote);
+
+        assertEquals(0, quotesRepository.findById(quote.getId()).orElseThrow().getVotes());
+    }
+
+    @Test
+    void bulkVotesAreMergedPerQuoteAndStopAtZero() {
+        Quote quote = quotesRepository.save(new Quote("Bulk voted quote", new Date(), null, user, 2));
+
+        List<VoteResultDto> results = quotesService.voteAll(List.of(
+                new VoteDeltaDto(quote.getId(), -1), new VoteDeltaDto(-1, 3),
+                new VoteDeltaDto(quote.getId(), -5), new VoteDeltaDto(quote.getId(), 1)));
+
+        assertEquals(2, results.size());
+        assertEquals(-1, results.get(0).getId());
+        assertFalse(results.get(0).isFound());
+        assertEquals(-2, results.get(1).getDelta());
+        assertTrue(results.get(1).isFound());
+        assertEquals(0, quotesRepository.findById(quote.getId()).orElseThrow().getVotes());
+    }
+
+    @Test
+    void votingForMissingQuoteThrows() {
+        assertThrows(QuoteNotFoundException.class, () -> quotesService.upvote(-1));
+        assertThrows(QuoteNotFoundException.class, () -> quotesService.downvote(-1));
+    }
+
+    //одновременно запустить THREADS потоков, каждый из которых голосует VOTES_PER_THREAD раз
+    private void hammer(int id, IntConsumer vote) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                Callable<Void> task = () -> {
+                    start.await();
+                    for (int j = 0; j < VOTES_PER_THREAD; j++) {
+                        vote.accept(id);
+                    }
+                    return null;
+                };
+                futures.add(executor.submit(task));
+            }
+
+            start.countDown();
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
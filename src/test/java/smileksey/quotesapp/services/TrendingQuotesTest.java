@@ -0,0 +1,108 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.util.TrendingWindow;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//голоса уходят из окна по мере движения времени, а счетчики неактивных цитат удаляются при сжатии
+class TrendingQuotesTest {
+
+    private final AtomicLong minute = new AtomicLong(1_000_000);
+    private TrendingQuotes trendingQuotes;
+
+    @BeforeEach
+    void setUp() {
+        QuotesLeaderboard leaderboard = mock(QuotesLeaderboard.class);
+        when(leaderboard.getMaxSize()).thenReturn(100);
+        when(leaderboard.find(anyInt())).thenAnswer(invocation -> {
+            int id = invocation.getArgument(0);
+            return Optional.of(new QuoteDto(id, "quote " + id, "user", "user@mail.com", 0, null, null));
+        });
+
+        trendingQuotes = new TrendingQuotes(leaderboard, new DeletedQuotes(), Duration.ZERO, Duration.ofMinutes(1), minute::get);
+    }
+
+    @Test
+    void votesLeaveWindowsAsTimePasses() {
+        vote(1, 3);
+        minute.addAndGet(30);
+        vote(2, 2);
+
+        assertEquals(List.of(1, 2), ids(TrendingWindow.HOUR));
+
+        //через 40 минут голоса цитаты 1 старше часа
+        minute.addAndGet(40);
+        assertEquals(List.of(2), ids(TrendingWindow.HOUR));
+        assertEquals(List.of(1, 2), ids(TrendingWindow.DAY));
+
+        //через двое суток голоса остаются только в недельном окне
+        minute.addAndGet(2 * 24 * 60);
+        assertEquals(List.of(), ids(TrendingWindow.DAY));
+        assertEquals(List.of(1, 2), ids(TrendingWindow.WEEK));
+        assertEquals(3, trendingQuotes.find(TrendingWindow.WEEK, 10).get(0).getWindowVotes());
+    }
+
+    @Test
+    void quotesWithoutPositiveSumAreNotListed() {
+        vote(1, 2);
+        trendingQuotes.record(1, -1);
+        trendingQuotes.record(1, -1);
+        vote(2, 1);
+
+        assertEquals(List.of(2), ids(TrendingWindow.HOUR));
+        assertEquals(List.of(2), ids(TrendingWindow.WEEK));
+    }
+
+    @Test
+    void compactionRemovesIdleCountersAndDeletedQuotes() {
+        vote(1, 1);
+        vote(2, 1);
+        vote(3, 1);
+        trendingQuotes.onQuoteDeleted(new QuoteDeletedEvent(3));
+
+        minute.addAndGet(6 * 24 * 60);
+        vote(2, 1);
+        minute.addAndGet(24 * 60);
+        trendingQuotes.compact();
+
+        assertEquals(1, trendingQuotes.size());
+        assertEquals(List.of(2), ids(TrendingWindow.WEEK));
+
+        //после удаления счетчика новый голос учитывается заново
+        vote(1, 1);
+        assertEquals(List.of(1), ids(TrendingWindow.HOUR));
+    }
+
+    @Test
+    void voteAfterDeleteDoesNotCreateCounter() {
+        vote(1, 1);
+        trendingQuotes.onQuoteDeleted(new QuoteDeletedEvent(1));
+
+        //голос закоммичен раньше удаления, но его событие пришло позже
+        vote(1, 1);
+
+        assertEquals(0, trendingQuotes.size());
+    }
+
+    private void vote(int id, int times) {
+        for (int i = 0; i < times; i++) {
+            trendingQuotes.record(id, 1);
+        }
+    }
+
+    private List<Integer> ids(TrendingWindow window) {
+        return trendingQuotes.find(window, 10).stream().map(quote -> quote.getQuote().getId()).toList();
+    }
+}
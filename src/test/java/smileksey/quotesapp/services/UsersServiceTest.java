@@ -0,0 +1,85 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import smileksey.quotesapp.models.User;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//кэш пользователей по email: отдает копии, не хранит отсутствующих пользователей и сбрасывается при изменении пользователя
+@SpringBootTest
+class UsersServiceTest {
+
+    @Autowired
+    private UsersService usersService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void cacheReturnsDetachedCopies() {
+        String email = email();
+        usersService.createUser(new User("Cached", email, "12345", null));
+        usersService.findByEmail(email);
+
+        long hits = usersService.getCacheStats().hitCount();
+        User first = usersService.findByEmail(email).orElseThrow();
+        User second = usersService.findByEmail(email).orElseThrow();
+        assertEquals(hits + 2, usersService.getCacheStats().hitCount());
+        assertNotSame(first, second);
+
+        //изменение полученного объекта не меняет запись кэша
+        first.setName("Changed");
+        first.setPassword("changed");
+        User cached = usersService.findByEmail(email).orElseThrow();
+        assertEquals("Cached", cached.getName());
+        assertEquals("12345", cached.getPassword());
+    }
+
+    @Test
+    void userIsFoundRightAfterRegistration() {
+        String email = email();
+
+        //отсутствующий пользователь не кэшируется, поэтому после регистрации он сразу находится
+        assertTrue(usersService.findByEmail(email).isEmpty());
+        usersService.createUser(new User("New", email, "12345", null));
+
+        assertEquals("New", usersService.findByEmail(email).orElseThrow().getName());
+    }
+
+    @Test
+    void createUserEvictsCachedEntry() {
+        String email = email();
+        usersService.createUser(new User("Old", email, "12345", null));
+        assertEquals("Old", usersService.findByEmail(email).orElseThrow().getName());
+
+        //пользователь удален мимо сервиса и зарегистрирован заново - кэш не должен отдавать прежнюю запись
+        jdbcTemplate.update("delete from service_user where email = ?", email);
+        usersService.createUser(new User("Registered again", email, "54321", null));
+
+        User user = usersService.findByEmail(email).orElseThrow();
+        assertEquals("Registered again", user.getName());
+        assertEquals("54321", user.getPassword());
+    }
+
+    @Test
+    void evictAfterUpdateReturnsFreshUser() {
+        String email = email();
+        usersService.createUser(new User("Before", email, "12345", null));
+        assertEquals("12345", usersService.findByEmail(email).orElseThrow().getPassword());
+
+        jdbcTemplate.update("update service_user set password = ?, name = ? where email = ?", "54321", "After", email);
+        usersService.evict(email);
+
+        User user = usersService.findByEmail(email).orElseThrow();
+        assertEquals("After", user.getName());
+        assertEquals("54321", user.getPassword());
+    }
+
+    private static String email() {
+        return "cache" + System.nanoTime() + "@mail.com";
+    }
+}
@@ -0,0 +1,272 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+import smileksey.quotesapp.events.QuoteVotesFlushedEvent;
+import smileksey.quotesapp.repositories.QuoteVotesBatchRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//накопитель голосов с БД в памяти: запись по порогу и при остановке, возврат голосов после ошибки,
+//переполнение, согласованное чтение во время записи пакета и сумма голосов после записи
+class VoteAggregatorTest {
+
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    private final FakeVotesRepository repository = new FakeVotesRepository();
+    private final List<QuoteVotesFlushedEvent> events = new CopyOnWriteArrayList<>();
+    private VoteAggregator aggregator;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (aggregator != null) {
+            aggregator.stop();
+        }
+    }
+
+    @Test
+    void thresholdFlushesWithoutWaitingForInterval() throws Exception {
+        aggregator = create(NEVER, 3, 100);
+        aggregator.start();
+        repository.votes.put(1, 0);
+        repository.votes.put(2, 0);
+        repository.votes.put(3, 0);
+
+        aggregator.record(1, 1);
+        aggregator.record(2, 1);
+        assertEquals(0, repository.batches.get());
+
+        aggregator.record(3, -1);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        //событие публикуется после записи пакета - ждем его, а не только запись
+        while (events.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, repository.batches.get());
+        assertEquals(0, aggregator.pendingSize());
+        assertEquals(Map.of(1, 1, 2, 1, 3, 0), repository.votes);
+        //сумма -1 уперлась в ноль: в событии записанная сумма и фактическое изменение
+        assertEquals(Map.of(1, 1, 2, 1, 3, -1), events.get(0).getDeltas());
+        assertEquals(Map.of(1, 1, 2, 1, 3, 0), events.get(0).getApplied());
+    }
+
+    @Test
+    void failedFlushReturnsVotesToPending() {
+        aggregator = create(NEVER, 1000, 100);
+        repository.votes.put(1, 10);
+        aggregator.record(1, 2);
+
+        repository.failures.set(1);
+        assertThrows(QueryTimeoutException.class, aggregator::flush);
+        assertEquals(2, aggregator.pendingDelta(1));
+        assertTrue(events.isEmpty());
+
+        //голоса после ошибки складываются с возвращенными и записываются следующим пакетом
+        aggregator.record(1, 3);
+        aggregator.flush();
+
+        assertEquals(15, repository.votes.get(1));
+        assertEquals(0, aggregator.pendingDelta(1));
+        assertEquals(Map.of(1, 5), events.get(0).getDeltas());
+    }
+
+    @Test
+    void overflowRejectsNewQuotesButAcceptsPendingOnes() {
+        aggregator = create(NEVER, 1000, 2);
+
+        assertTrue(aggregator.record(1, 1));
+        assertTrue(aggregator.record(2, 1));
+        //новую цитату записать некуда - голос нужно записать в БД сразу
+        assertFalse(aggregator.record(3, 1));
+        //голос за уже накопленную цитату размер не увеличивает
+        assertTrue(aggregator.record(1, 1));
+
+        assertEquals(2, aggregator.pendingDelta(1));
+        assertEquals(0, aggregator.pendingDelta(3));
+        assertEquals(2, aggregator.pendingSize());
+    }
+
+    @Test
+    void stopFlushesPendingVotes() throws Exception {
+        aggregator = create(NEVER, 1000, 100);
+        aggregator.start();
+        repository.votes.put(7, 1);
+
+        aggregator.record(7, 4);
+        aggregator.stop();
+        aggregator = null;
+
+        assertEquals(5, repository.votes.get(7));
+        assertEquals(1, repository.batches.get());
+    }
+
+    @Test
+    void readDuringFlushWaitsForBatch() throws Exception {
+        aggregator = create(NEVER, 1000, 100);
+        repository.votes.put(1, 10);
+        aggregator.record(1, 5);
+
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        repository.afterWrite = () -> {
+            written.countDown();
+            await(release);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> flush = executor.submit(aggregator::flush);
+            await(written);
+
+            //рейтинг в БД уже изменен, а голоса еще учитываются как незаписанные - чтение должно дождаться записи
+            Future<Integer> read = executor.submit(() -> aggregator.readConsistently(
+                    () -> repository.votes.get(1) + aggregator.pendingDelta(1)));
+            Thread.sleep(200);
+            assertFalse(read.isDone());
+
+            release.countDown();
+            flush.get(5, TimeUnit.SECONDS);
+            assertEquals(15, read.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        //без записи пакета чтение не ждет
+        assertEquals(15, aggregator.readConsistently(() -> repository.votes.get(1) + aggregator.pendingDelta(1)));
+    }
+
+    @Test
+    void concurrentVotesAndFlushesAddUpInDatabase() throws Exception {
+        int threads = 4;
+        int votesPerThread = 20_000;
+        aggregator = create(NEVER, 1000, 100_000);
+        //рейтинг далеко от нуля, поэтому нижняя граница не срабатывает и итог - точная сумма голосов
+        for (int id = 0; id < 50; id++) {
+            repository.votes.put(id, 1_000_000);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        AtomicBoolean voting = new AtomicBoolean(true);
+        Map<Integer, Integer> sent = new HashMap<>();
+
+        try {
+            Future<?> flusher = executor.submit(() -> {
+                while (voting.get()) {
+                    aggregator.flush();
+                }
+            });
+
+            List<Future<Map<Integer, Integer>>> voters = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                voters.add(executor.submit(() -> {
+                    Map<Integer, Integer> votes = new HashMap<>();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int j = 0; j < votesPerThread; j++) {
+                        int id = random.nextInt(50);
+                        int delta = random.nextBoolean() ? 1 : -1;
+                        assertTrue(aggregator.record(id, delta));
+                        votes.merge(id, delta, Integer::sum);
+                    }
+                    return votes;
+                }));
+            }
+
+            for (Future<Map<Integer, Integer>> voter : voters) {
+                voter.get().forEach((id, delta) -> sent.merge(id, delta, Integer::sum));
+            }
+            voting.set(false);
+            flusher.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        aggregator.flush();
+
+        assertEquals(0, aggregator.pendingSize());
+        for (int id = 0; id < 50; id++) {
+            assertEquals(1_000_000 + sent.getOrDefault(id, 0), repository.votes.get(id), "quote " + id);
+        }
+    }
+
+    private VoteAggregator create(long flushIntervalMs, int flushThreshold, int maxPending) {
+        QuoteShards quoteShards = mock(QuoteShards.class);
+        when(quoteShards.onShard(anyInt(), any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+
+        ApplicationEventPublisher publisher = event -> events.add((QuoteVotesFlushedEvent) event);
+
+        return new VoteAggregator(repository, quoteShards, mock(PlatformTransactionManager.class), publisher,
+                true, flushIntervalMs, flushThreshold, maxPending);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //БД в памяти: рейтинг цитат и нижняя граница, как в UPDATE ... greatest(votes + ?, 0)
+    private static final class FakeVotesRepository extends QuoteVotesBatchRepository {
+        private final Map<Integer, Integer> votes = new ConcurrentHashMap<>();
+        private final AtomicInteger batches = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile Runnable afterWrite = () -> {
+        };
+
+        private FakeVotesRepository() {
+            super(null);
+        }
+
+        @Override
+        public Map<Integer, Integer> applyVotes(List<int[]> deltas) {
+            if (failures.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+                throw new QueryTimeoutException("Database is not available");
+            }
+
+            Map<Integer, Integer> applied = new HashMap<>();
+            for (int[] delta : deltas) {
+                Integer current = votes.get(delta[0]);
+                if (current != null) {
+                    int updated = Math.max(0, current + delta[1]);
+                    votes.put(delta[0], updated);
+                    applied.put(delta[0], updated - current);
+                }
+            }
+            batches.incrementAndGet();
+            afterWrite.run();
+
+            return applied;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package smileksey.quotesapp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import smileksey.quotesapp.events.QuoteDeletedEvent;
+import smileksey.quotesapp.events.QuoteSavedEvent;
+import smileksey.quotesapp.events.QuoteVotedEvent;
+import smileksey.quotesapp.events.QuoteVotesFlushedEvent;
+import smileksey.quotesapp.models.Quote;
+import smileksey.quotesapp.repositories.QuotesRepository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+//каждая цитата занимает в дереве Фенвика отрезок длиной votes + 1 - при росте дерева, удалениях и голосовании у нуля
+class WeightedQuoteSamplerTest {
+
+    private WeightedQuoteSampler sampler;
+    //ожидаемый вес цитат: id -> votes + 1
+    private final Map<Integer, Long> weights = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        sampler = new WeightedQuoteSampler(mock(QuotesRepository.class), mock(QuoteShards.class), new DeletedQuotes());
+    }
+
+    @Test
+    void emptySamplerReturnsNone() {
+        assertEquals(RandomQuoteIndex.NONE, sampler.sample());
+        assertEquals(0, sampler.totalWeight());
+    }
+
+    @Test
+    void prefixSumsMatchWeightsAfterGrowthAndDeletes() {
+        //3000 цитат - дерево дважды удваивается с 1024 ячеек
+        for (int id = 1; id <= 3000; id++) {
+            save(id, id % 4);
+        }
+        //освободившиеся ячейки занимают новые цитаты с большими id
+        for (int id = 2; id <= 3000; id += 7) {
+            delete(id);
+        }
+        for (int id = 5000; id < 5100; id++) {
+            save(id, 3);
+        }
+
+        assertWeights();
+    }
+
+    @Test
+    void votesChangeWeightsAndStopAtZero() {
+        save(1, 0);
+        save(2, 5);
+        save(3, 1);
+
+        vote(2, 3, false);
+        vote(3, -1, false);
+        //незаписанные голоса ниже нуля не уменьшают вес, пока сумма не станет положительной
+        vote(1, -2, true);
+        vote(1, 1, true);
+        weights.put(2, 9L);
+        weights.put(3, 1L);
+        assertWeights();
+
+        vote(1, 2, true);
+        weights.put(1, 2L);
+        assertWeights();
+
+        //в БД записана сумма +1, рейтинг изменился на 1
+        sampler.onQuoteVotesFlushed(new QuoteVotesFlushedEvent(Map.of(1, 1), Map.of(1, 1)));
+        assertWeights();
+    }
+
+    @Test
+    void eventsOutOfCommitOrderKeepVotesAndDeletes() {
+        //голоса пришли раньше сохранения цитаты
+        vote(1, 2, false);
+        vote(1, 1, true);
+        save(1, 0);
+        weights.put(1, 4L);
+
+        //сохранение пришло после удаления
+        delete(2);
+        sampler.onQuoteSaved(new QuoteSavedEvent(quote(2, 5)));
+        vote(2, 1, false);
+
+        assertWeights();
+    }
+
+    @Test
+    void sampleFollowsWeights() {
+        save(1, 0);
+        save(2, 3);
+        save(3, 10);
+
+        int draws = 160_000;
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int i = 0; i < draws; i++) {
+            counts.merge(sampler.sample(), 1, Integer::sum);
+        }
+
+        //ожидаемые доли 1/16, 4/16 и 11/16
+        assertEquals(3, counts.size());
+        assertNear(draws / 16, counts.get(1));
+        assertNear(draws * 4 / 16, counts.get(2));
+        assertNear(draws * 11 / 16, counts.get(3));
+    }
+
+    private void save(int id, int votes) {
+        sampler.onQuoteSaved(new QuoteSavedEvent(quote(id, votes)));
+        weights.put(id, votes + 1L);
+    }
+
+    private static Quote quote(int id, int votes) {
+        Quote quote = new Quote("quote " + id, null, null, null, votes);
+        quote.setId(id);
+        return quote;
+    }
+
+    private void delete(int id) {
+        sampler.onQuoteDeleted(new QuoteDeletedEvent(id));
+        weights.remove(id);
+    }
+
+    private void vote(int id, int delta, boolean pending) {
+        sampler.onQuoteVoted(new QuoteVotedEvent(id, delta, pending));
+    }
+
+    //каждая точка [0, totalWeight) попадает в одну цитату, и на цитату приходится ровно столько точек, каков ее вес
+    private void assertWeights() {
+        long total = weights.values().stream().mapToLong(Long::longValue).sum();
+        assertEquals(total, sampler.totalWeight());
+
+        Map<Integer, Long> hits = new HashMap<>();
+        for (long point = 0; point < total; point++) {
+            hits.merge(sampler.sampleAt(point), 1L, Long::sum);
+        }
+
+        assertEquals(weights, hits);
+        assertEquals(RandomQuoteIndex.NONE, sampler.sampleAt(total));
+    }
+
+    private static void assertNear(int expected, int actual) {
+        assertTrue(Math.abs(expected - actual) < expected * 0.05 + 100, "expected about " + expected + " but was " + actual);
+    }
+}
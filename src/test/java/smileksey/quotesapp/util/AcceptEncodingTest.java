@@ -0,0 +1,31 @@
+package smileksey.quotesapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//gzip принимается только с весом больше 0; запись gzip важнее записи "*"
+class AcceptEncodingTest {
+
+    @Test
+    void gzipWithPositiveWeightIsAccepted() {
+        assertTrue(AcceptEncoding.acceptsGzip("gzip"));
+        assertTrue(AcceptEncoding.acceptsGzip("deflate, gzip;q=0.5, br"));
+        assertTrue(AcceptEncoding.acceptsGzip("GZIP ; Q=1.0"));
+        assertTrue(AcceptEncoding.acceptsGzip("x-gzip"));
+        assertTrue(AcceptEncoding.acceptsGzip("br, *;q=0.1"));
+    }
+
+    @Test
+    void gzipWithZeroWeightIsRejected() {
+        assertFalse(AcceptEncoding.acceptsGzip(null));
+        assertFalse(AcceptEncoding.acceptsGzip(""));
+        assertFalse(AcceptEncoding.acceptsGzip("identity"));
+        assertFalse(AcceptEncoding.acceptsGzip("gzip;q=0"));
+        assertFalse(AcceptEncoding.acceptsGzip("gzip;q=0.000, deflate"));
+        assertFalse(AcceptEncoding.acceptsGzip("*;q=1, gzip;q=0"));
+        assertFalse(AcceptEncoding.acceptsGzip("gzip;q=abc"));
+        assertFalse(AcceptEncoding.acceptsGzip("*;q=0"));
+    }
+}
@@ -0,0 +1,76 @@
+package smileksey.quotesapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//хеш-таблица должна совпадать с HashMap при любой последовательности добавлений и удалений, в том числе при росте таблицы
+//и удалении из середины цепочки пробирования
+class IntIntMapTest {
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        IntIntMap map = new IntIntMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            //небольшой диапазон ключей - много повторов, удалений и длинных цепочек
+            int key = random.nextInt(5_000);
+
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                int value = random.nextInt(1_000) + 1;
+                map.put(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (int key = 0; key < 5_000; key++) {
+            assertEquals(expected.getOrDefault(key, 0), map.get(key), "key " + key);
+        }
+    }
+
+    @Test
+    void capacityDependsOnKeyCountNotOnLargestKey() {
+        IntIntMap map = new IntIntMap();
+
+        for (int i = 0; i < 10; i++) {
+            map.put(Integer.MAX_VALUE - i * 1_000_000, i + 1);
+        }
+
+        assertEquals(new IntIntMap().capacity(), map.capacity());
+        assertEquals(1, map.get(Integer.MAX_VALUE));
+        assertEquals(0, map.get(Integer.MAX_VALUE - 1));
+    }
+
+    @Test
+    void clearRemovesAllKeys() {
+        IntIntMap map = new IntIntMap();
+        for (int key = 0; key < 1_000; key++) {
+            map.put(key, key + 1);
+        }
+
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertEquals(0, map.get(10));
+        assertEquals(new IntIntMap().capacity(), map.capacity());
+    }
+
+    @Test
+    void negativeKeysAreNotStored() {
+        IntIntMap map = new IntIntMap();
+
+        assertEquals(0, map.get(-1));
+        assertThrows(IllegalArgumentException.class, () -> map.put(-1, 1));
+    }
+}
@@ -0,0 +1,63 @@
+package smileksey.quotesapp.util;
+
+import org.junit.jupiter.api.Test;
+import smileksey.quotesapp.dto.QuoteDto;
+import smileksey.quotesapp.exceptions.InvalidPageRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//курсор после разбора указывает на ту же цитату; чужой или испорченный курсор отклоняется
+class QuotesCursorTest {
+
+    private static final Date CREATED = new Date(1_700_000_000_000L);
+
+    @Test
+    void encodedCursorDecodesToSameKey() {
+        QuoteDto last = quote(42, 7, CREATED);
+
+        assertDecodes(QuotesSort.ID, last, 42);
+        assertDecodes(QuotesSort.VOTES, last, 7);
+        assertDecodes(QuotesSort.CREATED, last, CREATED.getTime());
+    }
+
+    @Test
+    void quoteWithoutDateGetsNoDateKey() {
+        assertDecodes(QuotesSort.CREATED, quote(42, 7, null), QuotesCursor.NO_DATE);
+    }
+
+    @Test
+    void cursorOfOtherSortIsRejected() {
+        String token = QuotesCursor.after(QuotesSort.VOTES, quote(42, 7, CREATED)).encode();
+
+        assertThrows(InvalidPageRequestException.class, () -> QuotesCursor.decode(token, QuotesSort.CREATED));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(InvalidPageRequestException.class, () -> QuotesCursor.decode("not base64!", QuotesSort.ID));
+        assertThrows(InvalidPageRequestException.class, () -> QuotesCursor.decode(token("ID:1"), QuotesSort.ID));
+        assertThrows(InvalidPageRequestException.class, () -> QuotesCursor.decode(token("ID:x:1"), QuotesSort.ID));
+        assertThrows(InvalidPageRequestException.class, () -> QuotesCursor.decode(token("ID:1:1:1"), QuotesSort.ID));
+    }
+
+    private static void assertDecodes(QuotesSort sort, QuoteDto last, long key) {
+        QuotesCursor cursor = QuotesCursor.decode(QuotesCursor.after(sort, last).encode(), sort);
+
+        assertEquals(sort, cursor.getSort());
+        assertEquals(key, cursor.getKey());
+        assertEquals(last.getId(), cursor.getId());
+    }
+
+    private static String token(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static QuoteDto quote(int id, int votes, Date created) {
+        return new QuoteDto(id, "quote " + id, "user", "user@mail.com", votes, created, null);
+    }
+}